@@ -0,0 +1,216 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A skeletal implementation of {@link Buffer}.  This class manages the list
+ * of observers, implements the <tt>getContent</tt> and <tt>getExtents</tt>
+ * methods that allocate their results in terms of the methods that store
+ * their results in a caller-supplied object, and implements {@link #appendRows(int[], int, int)}
+ * in terms of <tt>extend</tt> and <tt>setContent</tt>.  It also counts the
+ * changes of which observers are notified, giving each state of the buffer a
+ * version number for {@link BufferSnapshot}, and implements update
+ * transactions by holding back and merging events while a transaction is in
+ * progress.  Transactions are not thread-safe; a buffer shared between
+ * threads must be locked for the whole transaction.
+ */
+public abstract class AbstractBuffer implements Buffer {
+	protected final List<BufferObserver> observers = new ArrayList<BufferObserver>();
+	/**
+	 * Incremented whenever observers are notified of a change.  Volatile so
+	 * that buffers written by one thread and read by others can publish it.
+	 */
+	protected volatile long version;
+	/** The number of update transactions in progress. */
+	protected int updateDepth;
+	/** The extents held back by the current transaction, or null. */
+	private Rectangle pendingExtents;
+	/** The content changes held back by the current transaction. */
+	private final Damage damage = new Damage();
+
+	@Override
+	public int[] getContent(int column, int row, int len) {
+		int[] result = new int[len];
+		getContent(column, row, len, result);
+		return result;
+	}
+
+	@Override
+	public int[][] getContent(int column, int row, int width, int height) {
+		int[][] result = new int[height][width];
+		getContent(column, row, width, height, result);
+		return result;
+	}
+
+	@Override
+	public Rectangle getExtents() {
+		final Rectangle result = new Rectangle();
+		getExtents(result);
+		return result;
+	}
+
+	/**
+	 * Visits rows by copying each one into an array allocated for the call.
+	 * Subclasses should override this method to pass their own storage to
+	 * the visitor if they can.
+	 */
+	@Override
+	public void visitRows(int row, int height, RowVisitor visitor) {
+		final Rectangle extents = getExtents();
+		final int[] values = new int[extents.width];
+		for(int r = row; r < row + height; ++r) {
+			getContent(extents.x, r, extents.width, values);
+			visitor.visitRow(r, values, 0, extents.width);
+		}
+	}
+
+	/**
+	 * Appends rows by extending the buffer and then copying the rows that
+	 * remain within the extents with
+	 * {@link #setContent(int, int, int[][], int, int)}.  Subclasses should
+	 * override this method if they can copy the rows more efficiently, or if
+	 * their <tt>extend</tt> method may notify observers more than once.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		final Rectangle extents = getExtents();
+		final int width = extents.width;
+		if(off < 0 || rowCount < 0 || off + rowCount * width > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int row = extents.y + extents.height;
+		extend(0, row + rowCount - 1);
+		final int first = Math.max(row, getExtents().y);
+		final int[][] rows = new int[row + rowCount - first][];
+		for(int r = 0; r < rows.length; ++r) {
+			final int from = off + (first - row + r) * width;
+			rows[r] = Arrays.copyOfRange(values, from, from + width);
+		}
+		setContent(0, first, rows, width, rows.length);
+	}
+
+	/**
+	 * Gets the current version of this buffer.  The version is incremented
+	 * whenever observers are notified of a change.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Takes a snapshot by copying the rows with
+	 * {@link #visitRows(int, int, RowVisitor)}.  Subclasses should override
+	 * this method if they can share their rows with the snapshot.
+	 */
+	@Override
+	public BufferSnapshot snapshot(int row, int height) {
+		final Rectangle extents = getExtents();
+		final int first = Math.max(row, extents.y);
+		final int last = Math.min(row + height, extents.y + extents.height);
+		final int[][] rows = new int[Math.max(0, last - first)][];
+		if(rows.length > 0) {
+			visitRows(first, rows.length, new RowVisitor() {
+				@Override
+				public void visitRow(int r, int[] values, int off, int len) {
+					rows[r - first] = Arrays.copyOfRange(values, off, off + len);
+				}
+			});
+		}
+		return new BufferSnapshot(version, extents, first, rows);
+	}
+
+	/**
+	 * Adds the specified observer to the end of the observer list.
+	 */
+	@Override
+	public void addBufferObserver(BufferObserver observer) {
+		if(observer == null) throw new NullPointerException();
+		observers.add(observer);
+	}
+
+	/**
+	 * Removes the first occurrence of the specified observer from the
+	 * observer list.
+	 */
+	@Override
+	public boolean removeBufferObserver(BufferObserver observer) {
+		return observers.remove(observer);
+	}
+
+	@Override
+	public void beginUpdate() {
+		++updateDepth;
+	}
+
+	/**
+	 * Ends an update transaction.  When the outermost transaction ends,
+	 * observers receive the last extents event it held back, followed by one
+	 * content event for the changes it held back that lie within the final
+	 * extents.
+	 */
+	@Override
+	public void endUpdate() {
+		if(updateDepth == 0) throw new IllegalStateException("no update in progress");
+		if(--updateDepth == 0) {
+			final Rectangle extents = pendingExtents;
+			pendingExtents = null;
+			if(extents != null) {
+				for(BufferObserver observer : observers) {
+					observer.extentsChanged(this, extents.x, extents.y, extents.width, extents.height);
+				}
+			}
+			if(damage.isDamaged()) {
+				// rows that scrolled off during the transaction are not news
+				damage.clip(extents != null ? extents : getExtents());
+				final Rectangle region = new Rectangle();
+				if(damage.take(region)) {
+					for(BufferObserver observer : observers) {
+						observer.contentChanged(this, region.x, region.y, region.width, region.height);
+					}
+				}
+			}
+		}
+	}
+
+	protected void fireContentChanged(int column, int row, int width, int height) {
+		++version;
+		if(updateDepth > 0) {
+			damage.add(column, row, width, height);
+			return;
+		}
+		for(BufferObserver observer : observers) {
+			observer.contentChanged(this, column, row, width, height);
+		}
+	}
+
+	protected void fireExtentsChanged(int column, int row, int width, int height) {
+		++version;
+		if(updateDepth > 0) {
+			if(pendingExtents == null) {
+				pendingExtents = new Rectangle();
+			}
+			pendingExtents.setBounds(column, row, width, height);
+			return;
+		}
+		for(BufferObserver observer : observers) {
+			observer.extentsChanged(this, column, row, width, height);
+		}
+	}
+
+	/**
+	 * Notifies observers that a region scrolled.  Inside a transaction, the
+	 * scroll is merged as damage to the whole region.
+	 */
+	protected void fireContentScrolled(int column, int row, int width, int height, int distance) {
+		++version;
+		if(updateDepth > 0) {
+			damage.add(column, row, width, height);
+			return;
+		}
+		for(BufferObserver observer : observers) {
+			observer.contentScrolled(this, column, row, width, height, distance);
+		}
+	}
+}
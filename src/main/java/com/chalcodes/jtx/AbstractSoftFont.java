@@ -0,0 +1,35 @@
+package com.chalcodes.jtx;
+
+import java.awt.Graphics;
+
+/**
+ * A skeletal implementation of {@link SoftFont}.  This class implements
+ * {@link #drawRun(int[], int, int, boolean, Graphics, int, int)} by drawing
+ * each glyph of the run with
+ * {@link #drawGlyph(int, boolean, Graphics, int, int)}, and implements
+ * frames for fonts that need no per-frame state.
+ */
+public abstract class AbstractSoftFont implements SoftFont {
+	@Override
+	public void drawRun(int[] values, int off, int len, boolean blinkOn, Graphics graphics, int x, int y) {
+		final int glyphWidth = getGlyphSize().width;
+		for(int i = 0; i < len; ++i) {
+			drawGlyph(values[off + i], blinkOn, graphics, x + i * glyphWidth, y);
+		}
+	}
+
+	/**
+	 * Does nothing.
+	 */
+	@Override
+	public void beginFrame(Graphics graphics) {
+	}
+
+	/**
+	 * Returns true.
+	 */
+	@Override
+	public boolean endFrame() {
+		return true;
+	}
+}
@@ -0,0 +1,388 @@
+package com.chalcodes.jtx;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * A persistent offscreen image of the rows a {@link Display} shows.  The
+ * image covers a window of whole buffer rows, and each row of the window
+ * remembers which of its cells have changed since they were last rendered.
+ * Painting renders only those cells and then draws the image, so the cost of
+ * a paint follows the amount of change rather than the size of the window.
+ * <p>
+ * The image has room for one more row than the tallest window it has held,
+ * since a viewport scrolled by pixels shows one more partial row than one
+ * aligned to rows.  Changing the number of rows only reallocates the image
+ * when the window outgrows it.
+ * <p>
+ * The dirty cells may be marked in any thread.  Everything else must be done
+ * in the Swing thread.
+ */
+final class BackBuffer {
+	private final int glyphWidth;
+	private final int glyphHeight;
+	private BufferedImage image;
+	/** The window in buffer coordinates. */
+	private int left;
+	private int top;
+	private int columns;
+	private int rows;
+	/** The number of rows the image and the arrays have room for. */
+	private int capacity;
+	/**
+	 * The first and last-plus-one dirty column of each row of the window.
+	 * A row is clean when its first dirty column is not less than its last.
+	 */
+	private int[] dirtyLeft = new int[0];
+	private int[] dirtyRight = new int[0];
+	/** The dirty columns taken by {@link #takeDirty()} for rendering. */
+	private int[] renderLeft = new int[0];
+	private int[] renderRight = new int[0];
+	/** True for each row of the window that was rendered with blinking cells. */
+	private boolean[] blinks = new boolean[0];
+	/** Reused by {@link #render} in the Swing thread. */
+	private final Rectangle snapshotExtents = new Rectangle();
+	private int[] run = new int[0];
+	/** The rows taken by {@link #takeDirty()}. */
+	private int renderTop;
+	private int renderBottom;
+
+	BackBuffer(int glyphWidth, int glyphHeight) {
+		this.glyphWidth = glyphWidth;
+		this.glyphHeight = glyphHeight;
+	}
+
+	/**
+	 * Moves and resizes the window.  Rows that leave the window are
+	 * forgotten, and rows that enter it are dirty.  When the window only
+	 * moves up or down, the rows that stay in it are moved within the image
+	 * instead of being rendered again.
+	 *
+	 * @param gc the configuration to create the image for, or null to create
+	 * a <tt>TYPE_INT_RGB</tt> image
+	 * @param left the first column
+	 * @param top the first row
+	 * @param columns the number of columns
+	 * @param rows the number of rows
+	 */
+	synchronized void setWindow(GraphicsConfiguration gc, int left, int top, int columns, int rows) {
+		if(image == null || columns != this.columns || rows > capacity) {
+			capacity = rows + 1;
+			final int width = Math.max(1, columns * glyphWidth);
+			final int height = capacity * glyphHeight;
+			image = gc == null
+					? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+					: gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+			this.columns = columns;
+			dirtyLeft = new int[capacity];
+			dirtyRight = new int[capacity];
+			renderLeft = new int[capacity];
+			renderRight = new int[capacity];
+			blinks = new boolean[capacity];
+		}
+		else if(left == this.left) {
+			if(top != this.top && Math.abs(top - this.top) < Math.min(rows, this.rows)) {
+				shift(top);
+			}
+			if(top == this.top) {
+				// rows added at the bottom have not been rendered
+				for(int i = this.rows; i < rows; ++i) {
+					dirtyLeft[i] = left;
+					dirtyRight[i] = left + columns;
+					blinks[i] = false;
+				}
+				this.rows = rows;
+				return;
+			}
+		}
+		this.left = left;
+		this.top = top;
+		this.rows = rows;
+		Arrays.fill(blinks, false);
+		markAll();
+	}
+
+	/**
+	 * Moves the window to a new top row less than its height away, moving
+	 * the rows that stay in the window with a single <tt>copyArea</tt>.
+	 */
+	private void shift(int newTop) {
+		final int distance = newTop - top;
+		final int count = rows - Math.abs(distance);
+		final int from = distance > 0 ? distance : 0;
+		final int to = distance > 0 ? 0 : -distance;
+		final Graphics g = image.getGraphics();
+		try {
+			g.copyArea(0, from * glyphHeight, columns * glyphWidth, count * glyphHeight, 0, (to - from) * glyphHeight);
+		}
+		finally {
+			g.dispose();
+		}
+		System.arraycopy(dirtyLeft, from, dirtyLeft, to, count);
+		System.arraycopy(dirtyRight, from, dirtyRight, to, count);
+		System.arraycopy(blinks, from, blinks, to, count);
+		final int entered = distance > 0 ? count : 0;
+		for(int i = entered; i < entered + Math.abs(distance); ++i) {
+			dirtyLeft[i] = left;
+			dirtyRight[i] = left + columns;
+			blinks[i] = false;
+		}
+		top = newTop;
+	}
+
+	private void markAll() {
+		Arrays.fill(dirtyLeft, left);
+		Arrays.fill(dirtyRight, left + columns);
+	}
+
+	/**
+	 * Marks a region dirty.  The parts of the region outside the window are
+	 * ignored.
+	 */
+	synchronized void markDirty(int column, int row, int width, int height) {
+		final int first = Math.max(row, top);
+		final int last = Math.min(row + height, top + rows);
+		final int l = Math.max(column, left);
+		final int r = Math.min(column + width, left + columns);
+		if(l >= r) return;
+		for(int i = first - top; i < last - top; ++i) {
+			if(dirtyLeft[i] >= dirtyRight[i]) {
+				dirtyLeft[i] = l;
+				dirtyRight[i] = r;
+			}
+			else {
+				dirtyLeft[i] = Math.min(dirtyLeft[i], l);
+				dirtyRight[i] = Math.max(dirtyRight[i], r);
+			}
+		}
+	}
+
+	/**
+	 * Marks every row of the window dirty.
+	 */
+	synchronized void markAllDirty() {
+		markAll();
+	}
+
+	/**
+	 * Marks the rows that were rendered with blinking cells dirty.
+	 *
+	 * @return true if any rows were marked
+	 */
+	synchronized boolean markBlinking() {
+		boolean marked = false;
+		for(int i = 0; i < rows; ++i) {
+			if(blinks[i]) {
+				dirtyLeft[i] = left;
+				dirtyRight[i] = left + columns;
+				marked = true;
+			}
+		}
+		return marked;
+	}
+
+	/**
+	 * Moves the rendering of a region up or down, as described by
+	 * {@link BufferObserver#contentScrolled(Buffer, int, int, int, int, int)}.
+	 * The rows exposed by the move are dirty.  A region narrower than the
+	 * window is simply marked dirty.
+	 */
+	synchronized void scroll(int column, int row, int width, int height, int distance) {
+		final int first = Math.max(row, top);
+		final int last = Math.min(row + height, top + rows);
+		if(first >= last) return;
+		if(column > left || column + width < left + columns || Math.abs(distance) >= last - first) {
+			markDirty(column, first, width, last - first);
+			return;
+		}
+		final int a = first - top;
+		final int count = last - first - Math.abs(distance);
+		final int from = distance > 0 ? a + distance : a;
+		final int to = distance > 0 ? a : a - distance;
+		final Graphics g = image.getGraphics();
+		try {
+			g.copyArea(0, from * glyphHeight, columns * glyphWidth, count * glyphHeight, 0, (to - from) * glyphHeight);
+		}
+		finally {
+			g.dispose();
+		}
+		System.arraycopy(dirtyLeft, from, dirtyLeft, to, count);
+		System.arraycopy(dirtyRight, from, dirtyRight, to, count);
+		System.arraycopy(blinks, from, blinks, to, count);
+		final int exposed = distance > 0 ? a + count : a;
+		for(int i = exposed; i < exposed + Math.abs(distance); ++i) {
+			dirtyLeft[i] = left;
+			dirtyRight[i] = left + columns;
+		}
+	}
+
+	/**
+	 * Takes the dirty cells for rendering and marks the window clean.  Cells
+	 * marked dirty after this returns will be rendered by the next paint, so
+	 * the snapshot to render from must be taken after this is called.
+	 *
+	 * @return true if any cells were dirty
+	 */
+	synchronized boolean takeDirty() {
+		renderTop = rows;
+		renderBottom = 0;
+		for(int i = 0; i < rows; ++i) {
+			renderLeft[i] = dirtyLeft[i];
+			renderRight[i] = dirtyRight[i];
+			if(dirtyLeft[i] < dirtyRight[i]) {
+				renderTop = Math.min(renderTop, i);
+				renderBottom = i + 1;
+			}
+		}
+		Arrays.fill(dirtyLeft, 0);
+		Arrays.fill(dirtyRight, 0);
+		return renderTop < renderBottom;
+	}
+
+	/**
+	 * Gets the first row taken by the last call to {@link #takeDirty()}.
+	 */
+	int getDirtyTop() {
+		return top + renderTop;
+	}
+
+	/**
+	 * Gets the number of rows spanned by the last call to
+	 * {@link #takeDirty()}.
+	 */
+	int getDirtyHeight() {
+		return Math.max(0, renderBottom - renderTop);
+	}
+
+	/**
+	 * Renders the cells taken by the last call to {@link #takeDirty()}.
+	 * Cells outside the snapshot are cleared to black.
+	 *
+	 * @param snapshot a snapshot of the dirty rows
+	 * @param font the font to render with
+	 * @param cache the cache to draw whole rows from, or null
+	 * @param blinkOn the blink phase
+	 * @param gc the configuration of the destination, or null
+	 * @return false if the font failed to draw the frame twice, in which case
+	 * the cells are dirty again and should be rendered by another paint
+	 */
+	boolean render(BufferSnapshot snapshot, SoftFont font, RowTileCache cache, boolean blinkOn, GraphicsConfiguration gc) {
+		snapshot.getExtents(snapshotExtents);
+		final int snapshotLeft = snapshotExtents.x;
+		final int snapshotRight = snapshotExtents.x + snapshotExtents.width;
+		// a raster font writes straight into the pixels of the image
+		final RasterSoftFont rasterFont = cache == null && font instanceof RasterSoftFont
+				&& image.getType() == BufferedImage.TYPE_INT_RGB ? (RasterSoftFont) font : null;
+		final int[] raster = rasterFont == null ? null : ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		final Graphics g = image.getGraphics();
+		try {
+			// the whole frame is drawn again once if the font lost the
+			// resources it draws from
+			final boolean framed = cache == null && rasterFont == null;
+			for(int attempt = 0; ; ++attempt) {
+				if(framed) {
+					font.beginFrame(g);
+				}
+				for(int i = renderTop; i < renderBottom; ++i) {
+					final int l = renderLeft[i];
+					final int r = renderRight[i];
+					if(l >= r) continue;
+					final int row = top + i;
+					final int y = i * glyphHeight;
+					// the cells in the snapshot, and black space on either side
+					int sl = Math.max(l, snapshotLeft);
+					int sr = Math.min(r, snapshotRight);
+					if(sl >= sr || !snapshot.contains(sl, row)) {
+						sl = sr = r;
+					}
+					g.setColor(Color.BLACK);
+					if(sl > l) {
+						g.fillRect((l - left) * glyphWidth, y, (sl - l) * glyphWidth, glyphHeight);
+					}
+					if(r > sr) {
+						g.fillRect((sr - left) * glyphWidth, y, (r - sr) * glyphWidth, glyphHeight);
+					}
+					// cells rendered earlier keep their blinking state
+					boolean blinking = l > left || r < left + columns ? blinks[i] : false;
+					if(sl < sr) {
+						if(run.length < sr - sl) {
+							run = new int[sr - sl];
+						}
+						snapshot.getContent(sl, row, sr - sl, run);
+						for(int c = 0; c < sr - sl; ++c) {
+							blinking |= VgaBufferElement.isBlinking(run[c]);
+						}
+						if(cache != null) {
+							g.setClip((sl - left) * glyphWidth, y, (sr - sl) * glyphWidth, glyphHeight);
+							g.drawImage(cache.getTile(snapshot, row, blinkOn, gc), (snapshotLeft - left) * glyphWidth, y, null);
+							g.setClip(null);
+						}
+						else if(rasterFont != null) {
+							rasterFont.drawRun(run, 0, sr - sl, blinkOn, raster, image.getWidth(), (sl - left) * glyphWidth, y);
+						}
+						else {
+							font.drawRun(run, 0, sr - sl, blinkOn, g, (sl - left) * glyphWidth, y);
+						}
+					}
+					blinks[i] = blinking;
+				}
+				if(!framed || font.endFrame()) {
+					return true;
+				}
+				if(attempt > 0) {
+					redirty();
+					return false;
+				}
+			}
+		}
+		finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Marks the cells taken by the last call to {@link #takeDirty()} dirty
+	 * again.
+	 */
+	private synchronized void redirty() {
+		for(int i = renderTop; i < renderBottom; ++i) {
+			if(renderLeft[i] < renderRight[i]) {
+				markDirty(renderLeft[i], top + i, renderRight[i] - renderLeft[i], 1);
+			}
+		}
+	}
+
+	/**
+	 * Gets the image.  Its top left corner shows the top left cell of the
+	 * window.  Only the rows of the window are valid.
+	 */
+	BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+	 * Draws the rows of the window.
+	 *
+	 * @param g the graphics to draw to
+	 * @param y the y coordinate of the top of the window
+	 */
+	void draw(Graphics g, int y) {
+		if(rows == 0) return;
+		final int width = columns * glyphWidth;
+		final int height = rows * glyphHeight;
+		g.drawImage(image, 0, y, width, y + height, 0, 0, width, height, null);
+	}
+
+	/**
+	 * Gets the first row of the window.
+	 */
+	int getTop() {
+		return top;
+	}
+}
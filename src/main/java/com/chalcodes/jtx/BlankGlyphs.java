@@ -0,0 +1,79 @@
+package com.chalcodes.jtx;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+/**
+ * The glyphs of a VGA glyph sheet that have no foreground pixels, such as
+ * the space, and the background colors of the sheet.  Found by reading the
+ * pixels of the sheet, so this class does not need a graphics device.  See
+ * {@link VgaSoftFont} for the layout of the glyph sheet.
+ */
+final class BlankGlyphs {
+	/** True for each character whose glyph has no foreground pixels. */
+	private final boolean[] blank = new boolean[256];
+	/** The background colors of the glyph sheet. */
+	private final Color[] backgrounds = new Color[8];
+
+	/**
+	 * Finds the glyphs that look the same in white on black as in black on
+	 * black, and samples the background colors from the first of them.
+	 *
+	 * @param glyphSheet the glyph sheet
+	 * @param glyphSize the size of each glyph in the sheet
+	 */
+	BlankGlyphs(BufferedImage glyphSheet, Dimension glyphSize) {
+		final int whiteOnBlack = VgaColors.WHITE * glyphSize.height;
+		int sample = -1;
+		for(int c = 0; c < 256; ++c) {
+			blank[c] = true;
+			final int x = c * glyphSize.width;
+			for(int dy = 0; dy < glyphSize.height && blank[c]; ++dy) {
+				for(int dx = 0; dx < glyphSize.width; ++dx) {
+					if(glyphSheet.getRGB(x + dx, dy) != glyphSheet.getRGB(x + dx, whiteOnBlack + dy)) {
+						blank[c] = false;
+						break;
+					}
+				}
+			}
+			if(blank[c] && sample < 0) {
+				sample = c;
+			}
+		}
+		for(int bg = 0; bg < 8; ++bg) {
+			backgrounds[bg] = sample < 0
+					? VgaColors.background(bg)
+					: new Color(glyphSheet.getRGB(sample * glyphSize.width, (bg << 3) * glyphSize.height));
+		}
+	}
+
+	/**
+	 * Gets the background color of a cell that draws no foreground pixels.
+	 *
+	 * @param value packed character and attributes
+	 * @param blinkOn whether characters with the blink attribute are on
+	 * @return the background color, or -1 if the cell is not blank
+	 */
+	int getBackground(int value, boolean blinkOn) {
+		if((value & VgaBufferElement.UNDERLINED) != 0) return -1;
+		int character = value & 0xFFFF;
+		if(character > 255) character = '?';
+		if(!blinkOn && (value & VgaBufferElement.BLINKING) != 0) character = 0;
+		if(!blank[character]) return -1;
+		int colorAttr = (value & 0x7F0000) >> 16;
+		if((value & VgaBufferElement.INVERTED) != 0 ^ (value & VgaBufferElement.SELECTED) != 0) {
+			colorAttr ^= 0x3F;
+		}
+		return (colorAttr >> 3) & 7;
+	}
+
+	/**
+	 * Gets a background color as it appears in the glyph sheet.
+	 *
+	 * @param bg the background color, 0-7
+	 */
+	Color getColor(int bg) {
+		return backgrounds[bg];
+	}
+}
@@ -70,6 +70,17 @@ public interface Buffer {
 	 * @return
 	 */
 	public abstract int[][] getContent(int column, int row, int width, int height);
+
+	/**
+	 * Passes each of a range of rows to a visitor without copying them, if
+	 * the implementation allows.  This is the cheapest way to read whole
+	 * rows.  The visitor must not modify the buffer.
+	 *
+	 * @param row the first row
+	 * @param height the number of rows
+	 * @param visitor the visitor
+	 */
+	public abstract void visitRows(int row, int height, RowVisitor visitor);
 	
 	/**
 	 * Sets the value at the specified coordinates.  Buffer observers should
@@ -105,6 +116,53 @@ public interface Buffer {
 	 */
 	public abstract void setContent(int column, int row, int[][] values, int width, int height);
 	
+	/**
+	 * Appends whole rows to the bottom of the buffer, extending the buffer
+	 * extents to include them.  Each row is as wide as the buffer extents.
+	 * If more rows are appended than the buffer can hold, only the last rows
+	 * are retained.  Buffer observers should be notified only once of the
+	 * extents change and only once of the content change.
+	 * 
+	 * @param values the rows to append, stored consecutively
+	 * @param off the offset in <tt>values</tt> of the first row
+	 * @param rowCount the number of rows to append
+	 */
+	public abstract void appendRows(int[] values, int off, int rowCount);
+
+	/**
+	 * Takes an immutable snapshot of a range of rows.  Rows outside the
+	 * buffer extents are left out of the snapshot.  Implementations should
+	 * make this cheap enough to call once per frame, for example by sharing
+	 * rows with the snapshot and copying them when they are next written.
+	 *
+	 * @param row the first row
+	 * @param height the number of rows
+	 * @return the snapshot
+	 */
+	public abstract BufferSnapshot snapshot(int row, int height);
+
+	/**
+	 * Begins an update transaction.  Until the matching call to
+	 * {@link #endUpdate()}, buffer observers are not notified of changes.
+	 * Instead, the changes are merged and observers are notified once of the
+	 * extents change and once of the content change when the outermost
+	 * transaction ends.  Transactions may be nested.
+	 * <p>
+	 * When a buffer is shared between threads, callers should hold the
+	 * buffer's lock for the whole transaction, for example by synchronizing
+	 * on a {@link SynchronizedBuffer}, so that the lock is taken once for the
+	 * whole batch of operations.
+	 */
+	public abstract void beginUpdate();
+
+	/**
+	 * Ends an update transaction, notifying observers of the merged changes
+	 * if it is the outermost transaction.
+	 *
+	 * @throws IllegalStateException if no transaction is in progress
+	 */
+	public abstract void endUpdate();
+
 	/**
 	 * Extends the buffer extents so they contain the specified coordinates.
 	 * As with reads and writes, implementations may transform invalid values,
@@ -119,6 +177,16 @@ public interface Buffer {
 	 * Gets the buffer extents.
 	 */
 	public abstract Rectangle getExtents();
+
+	/**
+	 * Gets the buffer extents, storing them in <tt>result</tt>.  Unlike
+	 * reading the extents one property at a time, this gets all four
+	 * properties from the same state of a buffer that is being written by
+	 * another thread.
+	 *
+	 * @param result the rectangle in which to store the extents
+	 */
+	public abstract void getExtents(Rectangle result);
 	
 	/**
 	 * Returns true if the buffer extents contain the specified coordinates. 
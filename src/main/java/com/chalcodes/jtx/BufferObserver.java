@@ -26,7 +26,20 @@ public interface BufferObserver {
 	 */
 	public abstract void contentChanged(Buffer buffer, int x, int y, int width, int height);
 	
-	// this would allow circular buffers with fixed extents to notify their
-	// observers of content scrolling.  leaving it out for now...
-	//public abstract void contentScrolled(Buffer buffer, int x, int y);
+	/**
+	 * Fired when the rows of a region of a {@link Buffer} are moved up or
+	 * down without changing the buffer extents.  Content moved out of the
+	 * region is discarded, and the rows exposed at the other side of the
+	 * region are cleared.  Observers that have already rendered the region
+	 * can move their rendering instead of rendering it again.
+	 * 
+	 * @param buffer the source of the event
+	 * @param x the x coordinate of the top left corner of the region
+	 * @param y the y coordinate of the top left corner of the region
+	 * @param width the width of the region
+	 * @param height the height of the region
+	 * @param distance the number of rows the content moved up, or if
+	 * negative, down
+	 */
+	public abstract void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance);
 }
@@ -0,0 +1,109 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+
+/**
+ * An immutable view of a range of rows of a {@link Buffer}, as they were
+ * when the snapshot was taken.  A snapshot can be read in any thread without
+ * synchronization while the buffer continues to be written.
+ * <p>
+ * Rows are indexed by the same absolute row numbers as the buffer.  A
+ * snapshot only contains the rows that were within the buffer extents when
+ * it was taken.
+ *
+ * @see Buffer#snapshot(int, int)
+ */
+public final class BufferSnapshot {
+	private final long version;
+	private final Rectangle extents;
+	private final int row;
+	private final int[][] rows;
+
+	/**
+	 * Creates a new snapshot.  The row arrays are not copied, so the buffer
+	 * must never modify them after passing them to this constructor.
+	 *
+	 * @param version the version of the buffer when the snapshot was taken
+	 * @param extents the buffer extents when the snapshot was taken
+	 * @param row the absolute row number of the first row
+	 * @param rows the rows, each as wide as the extents
+	 */
+	public BufferSnapshot(long version, Rectangle extents, int row, int[][] rows) {
+		this.version = version;
+		this.extents = new Rectangle(extents);
+		this.row = row;
+		this.rows = rows;
+	}
+
+	/**
+	 * Gets the version of the buffer when this snapshot was taken.  The
+	 * version changes whenever the buffer notifies its observers of a change.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the buffer extents when this snapshot was taken.
+	 */
+	public Rectangle getExtents() {
+		return new Rectangle(extents);
+	}
+
+	/**
+	 * Gets the buffer extents when this snapshot was taken, storing them in
+	 * <tt>result</tt>.
+	 */
+	public void getExtents(Rectangle result) {
+		result.setBounds(extents);
+	}
+
+	/**
+	 * Gets the absolute row number of the first row in this snapshot.
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Gets the number of rows in this snapshot.
+	 */
+	public int getHeight() {
+		return rows.length;
+	}
+
+	/**
+	 * Returns true if this snapshot contains the specified coordinates.
+	 */
+	public boolean contains(int column, int row) {
+		return row >= this.row && row < this.row + rows.length
+				&& column >= extents.x && column < extents.x + extents.width;
+	}
+
+	/**
+	 * Gets the value at the specified coordinates.
+	 *
+	 * @throws IndexOutOfBoundsException if this snapshot does not contain the
+	 * coordinates
+	 */
+	public int getContent(int column, int row) {
+		if(!contains(column, row)) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, snapshot row %d", column, row, this.row));
+		}
+		return rows[row - this.row][column - extents.x];
+	}
+
+	/**
+	 * Copies a one-dimensional array of values from a row, storing them in
+	 * <tt>result</tt>.
+	 *
+	 * @throws IndexOutOfBoundsException if this snapshot does not contain the
+	 * values
+	 */
+	public void getContent(int column, int row, int len, int[] result) {
+		if(len < 0 || !contains(column, row) || (len > 0 && !contains(column + len - 1, row))) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, snapshot row %d", column, row, this.row));
+		}
+		System.arraycopy(rows[row - this.row], column - extents.x, result, 0, len);
+	}
+}
@@ -0,0 +1,125 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * A buffer observer that merges the events it receives and passes them on to
+ * another observer in the Swing thread, at most once per frame interval.
+ * Its observer methods may be called in any thread.
+ * <p>
+ * Extents events are merged by keeping only the most recent extents.
+ * Content events are merged into a single damaged rectangle that contains
+ * all the changed regions.  Scroll events are treated as changes to the
+ * whole scrolled region, because a scroll can no longer be copied once it
+ * has been merged with other changes.  When a frame is delivered, the target
+ * receives the extents event first, followed by the content event.
+ * <p>
+ * To use this class with a {@link Display}, remove the display from its
+ * buffer's observers and add a <tt>CoalescingBufferObserver</tt> wrapping the
+ * display instead.  Since the display then only receives events in the Swing
+ * thread, it does not need to be a {@link SynchronizedDisplay}, but the
+ * buffer must support reads in the Swing thread while it is being written,
+ * like {@link ConcurrentScrollbackBuffer}.
+ */
+public class CoalescingBufferObserver implements BufferObserver {
+	protected final BufferObserver target;
+	protected final Timer timer;
+	private Buffer source;
+	/** The most recent extents, or null if the extents have not changed. */
+	private Rectangle extents;
+	private final Damage damage = new Damage();
+	private boolean scheduled;
+
+	/**
+	 * Creates a new <tt>CoalescingBufferObserver</tt>.
+	 *
+	 * @param target the observer to which merged events are delivered
+	 * @param interval the frame interval in milliseconds
+	 */
+	public CoalescingBufferObserver(BufferObserver target, int interval) {
+		if(target == null) throw new NullPointerException();
+		if(interval < 0) throw new IllegalArgumentException();
+		this.target = target;
+		timer = new Timer(interval, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				deliver();
+			}
+		});
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * Starts the frame timer if a frame is not already scheduled.  Must be
+	 * called while holding this object's lock.
+	 */
+	private void schedule() {
+		if(!scheduled) {
+			scheduled = true;
+			timer.restart();
+		}
+	}
+
+	@Override
+	public synchronized void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+		source = buffer;
+		if(extents == null) {
+			extents = new Rectangle();
+		}
+		extents.setBounds(x, y, width, height);
+		schedule();
+	}
+
+	@Override
+	public synchronized void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+		source = buffer;
+		damage.add(x, y, width, height);
+		schedule();
+	}
+
+	@Override
+	public synchronized void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+		source = buffer;
+		damage.add(x, y, width, height);
+		schedule();
+	}
+
+	/**
+	 * Delivers the merged events to the target.  Called in the Swing thread
+	 * by the frame timer.
+	 */
+	protected void deliver() {
+		final Buffer buffer;
+		final Rectangle extents;
+		final Rectangle region = new Rectangle();
+		final boolean damaged;
+		synchronized(this) {
+			buffer = source;
+			extents = this.extents;
+			damaged = damage.take(region);
+			this.extents = null;
+			scheduled = false;
+		}
+		if(extents != null) {
+			target.extentsChanged(buffer, extents.x, extents.y, extents.width, extents.height);
+		}
+		if(damaged) {
+			target.contentChanged(buffer, region.x, region.y, region.width, region.height);
+		}
+	}
+
+	/**
+	 * Stops the frame timer.  Events that have not been delivered yet are
+	 * discarded.
+	 */
+	public synchronized void stop() {
+		timer.stop();
+		extents = null;
+		damage.clear();
+		scheduled = false;
+	}
+}
@@ -0,0 +1,327 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A scrollback buffer that compresses rows that have scrolled out of a
+ * window of recent rows.  The ring semantics and absolute row numbering are
+ * the same as those of {@link ScrollbackBuffer}.
+ * <p>
+ * Rows are stored in blocks of {@link #BLOCK_ROWS} rows.  Blocks containing
+ * any of the newest <i>hotRows</i> rows are kept uncompressed.  Older blocks
+ * are compressed with {@link RunLengthCodec}, which typically shrinks
+ * terminal output by a factor of five to ten.  Reading a compressed row
+ * decompresses its block into a small LRU cache, so scrolling back through
+ * history decompresses each block only once.  Writing a compressed row
+ * recompresses its block.
+ */
+public class CompressedScrollbackBuffer extends AbstractBuffer {
+	/** The number of rows in each block. */
+	public static final int BLOCK_ROWS = 64;
+	/** The default number of decompressed blocks to cache. */
+	public static final int DEFAULT_CACHE_BLOCKS = 8;
+
+	protected final int columns;
+	protected final int rows;
+	protected final int hotRows;
+	/** Blocks indexed by absolute block number modulo the array length. */
+	protected final Block[] blocks;
+	protected final Rectangle extents;
+	/** Decompressed blocks keyed by absolute block number. */
+	protected final Map<Integer, int[]> cache;
+	/** All blocks below this absolute block number are compressed. */
+	protected int frozen;
+
+	protected static class Block {
+		/** The uncompressed values, or null if the block is compressed. */
+		int[] raw;
+		/** The compressed values, or null if the block is uncompressed. */
+		byte[] packed;
+	}
+
+	/**
+	 * Creates a new <tt>CompressedScrollbackBuffer</tt> with the default
+	 * cache size.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 * @param hotRows the number of recent rows to keep uncompressed
+	 */
+	public CompressedScrollbackBuffer(int columns, int rows, int hotRows) {
+		this(columns, rows, hotRows, DEFAULT_CACHE_BLOCKS);
+	}
+
+	/**
+	 * Creates a new <tt>CompressedScrollbackBuffer</tt>.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 * @param hotRows the number of recent rows to keep uncompressed
+	 * @param cacheBlocks the maximum number of decompressed blocks to cache
+	 */
+	public CompressedScrollbackBuffer(int columns, int rows, int hotRows, final int cacheBlocks) {
+		if(columns < 1 || rows < 1 || hotRows < 1 || cacheBlocks < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.columns = columns;
+		this.rows = rows;
+		this.hotRows = hotRows;
+		// enough blocks to hold any window of rows, however it is aligned
+		blocks = new Block[(rows - 1) / BLOCK_ROWS + 2];
+		extents = new Rectangle(0, 0, columns, 0);
+		cache = new LinkedHashMap<Integer, int[]>(cacheBlocks * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+				return size() > cacheBlocks;
+			}
+		};
+	}
+
+	/**
+	 * Gets the values of the specified block, decompressing them if
+	 * necessary.  Uncompressed blocks are created on demand.
+	 */
+	protected int[] blockValues(int block) {
+		Block b = blocks[block % blocks.length];
+		if(b == null) {
+			b = new Block();
+			b.raw = new int[BLOCK_ROWS * columns];
+			blocks[block % blocks.length] = b;
+		}
+		if(b.raw != null) {
+			return b.raw;
+		}
+		int[] values = cache.get(block);
+		if(values == null) {
+			values = new int[BLOCK_ROWS * columns];
+			RunLengthCodec.decode(b.packed, values, 0, values.length);
+			cache.put(block, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Stores the modified values of a block previously obtained from
+	 * {@link #blockValues(int)}.
+	 */
+	protected void commit(int block, int[] values) {
+		Block b = blocks[block % blocks.length];
+		if(b.raw == null) {
+			b.packed = RunLengthCodec.encode(values, 0, values.length);
+		}
+	}
+
+	private void checkRow(int column, int row) {
+		if(row < extents.y || row >= extents.y + extents.height) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, extents.y %d", column, row, extents.y));
+		}
+	}
+
+	private void checkColumns(int column, int len) {
+		if(column < 0 || len < 0 || column + len > columns) {
+			throw new IndexOutOfBoundsException(String.format("col %d, len %d, columns %d", column, len, columns));
+		}
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		checkRow(column, row);
+		checkColumns(column, 1);
+		return blockValues(row / BLOCK_ROWS)[row % BLOCK_ROWS * columns + column];
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		checkRow(column, row);
+		checkColumns(column, len);
+		System.arraycopy(blockValues(row / BLOCK_ROWS), row % BLOCK_ROWS * columns + column, result, 0, len);
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkColumns(column, width);
+		for(int r = 0; r < height; ++r) {
+			getContent(column, row + r, width, result[r]);
+		}
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		checkColumns(column, 1);
+		extend(0, row);
+		final int block = row / BLOCK_ROWS;
+		final int[] values = blockValues(block);
+		values[row % BLOCK_ROWS * columns + column] = value;
+		commit(block, values);
+		fireContentChanged(column, row, 1, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || off + len > values.length) throw new IllegalArgumentException();
+		extend(0, row);
+		if(column < 0) {
+			len += column;
+			off -= column;
+			column = 0;
+		}
+		if(column + len > columns) {
+			len -= column + len - columns;
+		}
+		if(len <= 0) return;
+		final int block = row / BLOCK_ROWS;
+		final int[] blockValues = blockValues(block);
+		System.arraycopy(values, off, blockValues, row % BLOCK_ROWS * columns + column, len);
+		commit(block, blockValues);
+		fireContentChanged(column, row, len, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		if(values.length < height || !extents.contains(column, row, width, height)) {
+			throw new IndexOutOfBoundsException();
+		}
+		for(int r = 0; r < height; ++r) {
+			if(values[r].length < width) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		int r = 0;
+		while(r < height) {
+			// copy all the rows that fall in the same block before committing it
+			final int block = (row + r) / BLOCK_ROWS;
+			final int[] blockValues = blockValues(block);
+			do {
+				System.arraycopy(values[r], 0, blockValues, (row + r) % BLOCK_ROWS * columns + column, width);
+				++r;
+			} while(r < height && (row + r) / BLOCK_ROWS == block);
+			commit(block, blockValues);
+		}
+		fireContentChanged(column, row, width, height);
+	}
+
+	@Override
+	public void getExtents(Rectangle result) {
+		result.setBounds(extents);
+	}
+
+	@Override
+	public boolean contains(int column, int row) {
+		return extents.contains(column, row);
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row.
+	 * Behaves exactly like {@link ScrollbackBuffer#extend(int, int)}, except
+	 * that rows leaving the window of hot rows are compressed.
+	 */
+	@Override
+	public void extend(int column, int row) {
+		if(grow(row)) {
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		}
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row,
+	 * without notifying observers.
+	 *
+	 * @return true if the extents changed; otherwise false
+	 */
+	protected boolean grow(int row) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		int tail = extents.y + extents.height;
+		if(row < tail) return false;
+		int newRows = row + 1 - tail; // +1 because row is inclusive, tail is exclusive
+
+		if(tail >= rows) { // buffer is full and scrolling
+			int clear = Math.min(newRows, rows);
+			int oldY = extents.y;
+			extents.y += newRows;
+			retire(oldY, extents.y);
+			for(int i = row + 1 - clear; i <= row; ++i) {
+				final int block = i / BLOCK_ROWS;
+				final int[] values = blockValues(block);
+				final int off = i % BLOCK_ROWS * columns;
+				Arrays.fill(values, off, off + columns, VgaBufferElement.DEFAULT_VALUE);
+				commit(block, values);
+			}
+			freeze();
+		}
+		else if(row < rows) { // buffer is not full, and this will not make it scroll
+			extents.height += newRows;
+			freeze();
+		}
+		else {
+			// split into two recursive calls that match the above conditions
+			grow(rows - 1);
+			grow(row);
+		}
+		return true;
+	}
+
+	/**
+	 * Appends rows with a single change of the extents, copying all the rows
+	 * that fall in the same block before committing it.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		if(off < 0 || rowCount < 0 || off + rowCount * columns > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int row = extents.y + extents.height;
+		grow(row + rowCount - 1);
+		fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		// skip any rows that have already scrolled off the top
+		final int skip = Math.max(0, extents.y - row);
+		final int first = row + skip;
+		final int height = rowCount - skip;
+		int r = 0;
+		while(r < height) {
+			final int block = (first + r) / BLOCK_ROWS;
+			final int[] blockValues = blockValues(block);
+			do {
+				System.arraycopy(values, off + (skip + r) * columns, blockValues, (first + r) % BLOCK_ROWS * columns, columns);
+				++r;
+			} while(r < height && (first + r) / BLOCK_ROWS == block);
+			commit(block, blockValues);
+		}
+		fireContentChanged(0, first, columns, height);
+	}
+
+	/**
+	 * Discards the blocks that have scrolled entirely off the top of the
+	 * buffer.
+	 */
+	private void retire(int oldY, int newY) {
+		final int end = newY / BLOCK_ROWS;
+		for(int block = Math.max(oldY / BLOCK_ROWS, end - blocks.length); block < end; ++block) {
+			blocks[block % blocks.length] = null;
+			cache.remove(block);
+		}
+		frozen = Math.max(frozen, end);
+	}
+
+	/**
+	 * Compresses the blocks that have left the window of hot rows.
+	 */
+	private void freeze() {
+		final int hotStart = extents.y + extents.height - hotRows;
+		while((frozen + 1) * BLOCK_ROWS <= hotStart) {
+			final int[] values = blockValues(frozen);
+			final Block b = blocks[frozen % blocks.length];
+			if(b.raw != null) {
+				b.packed = RunLengthCodec.encode(values, 0, values.length);
+				b.raw = null;
+			}
+			++frozen;
+		}
+	}
+}
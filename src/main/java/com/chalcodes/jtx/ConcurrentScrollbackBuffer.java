@@ -0,0 +1,300 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A scrollback buffer for one writer thread and any number of reader
+ * threads.  The ring semantics and absolute row numbering are the same as
+ * those of {@link ScrollbackBuffer}, except that all rows added to the
+ * buffer are filled with {@link VgaBufferElement#DEFAULT_VALUE}.
+ * <p>
+ * All methods that write the buffer or change its extents must be called in
+ * the same thread, and observers are notified in that thread.  The
+ * <tt>getContent</tt> methods, {@link #getExtents()}, {@link #contains(int,
+ * int)} and {@link #snapshot(int, int)} may be called in any thread without
+ * synchronization.
+ * <p>
+ * Readers never block the writer.  Each row has a sequence number that the
+ * writer makes odd while it is changing the row and even again when it is
+ * done.  A reader copies a row between two reads of its sequence number and
+ * retries only if the number was odd or changed in between, which happens
+ * only when that row was being written.  A row that scrolls off the top of
+ * the buffer while it is being read causes an
+ * <tt>IndexOutOfBoundsException</tt>, as if it had scrolled off before the
+ * read began; snapshots simply leave such rows out.
+ * <p>
+ * Cells and sequence numbers are written with ordered stores
+ * (<tt>lazySet</tt>), which are no more expensive than plain stores on
+ * common hardware, and read with volatile loads.
+ */
+public class ConcurrentScrollbackBuffer extends AbstractBuffer {
+	protected final int columns;
+	protected final int rows;
+	protected final AtomicIntegerArray values;
+	/** Per-slot sequence numbers.  Odd while the slot is being written. */
+	protected final AtomicLongArray sequences;
+	/**
+	 * The current extents.  Never modified after it is published; the writer
+	 * publishes a new rectangle when the extents change.
+	 */
+	protected volatile Rectangle extents;
+
+	/**
+	 * Creates a new <tt>ConcurrentScrollbackBuffer</tt>.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 */
+	public ConcurrentScrollbackBuffer(int columns, int rows) {
+		if(columns < 1 || rows < 1) throw new IllegalArgumentException();
+		this.columns = columns;
+		this.rows = rows;
+		values = new AtomicIntegerArray(columns * rows);
+		sequences = new AtomicLongArray(rows);
+		extents = new Rectangle(0, 0, columns, 0);
+	}
+
+	private static boolean containsRow(Rectangle extents, int row) {
+		return row >= extents.y && row < extents.y + extents.height;
+	}
+
+	private void checkRows(int column, int row, int height) {
+		final Rectangle extents = this.extents;
+		if(row < extents.y || row + height > extents.y + extents.height || height < 0) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, extents.y %d", column, row, extents.y));
+		}
+	}
+
+	private void checkColumns(int column, int width) {
+		if(column < 0 || width < 0 || column + width > columns) {
+			throw new IndexOutOfBoundsException(String.format("col %d, width %d, columns %d", column, width, columns));
+		}
+	}
+
+	/**
+	 * Marks a slot as being written.
+	 */
+	private void beginWrite(int slot) {
+		sequences.lazySet(slot, sequences.get(slot) + 1);
+	}
+
+	/**
+	 * Marks a slot as consistent again.
+	 */
+	private void endWrite(int slot) {
+		sequences.lazySet(slot, sequences.get(slot) + 1);
+	}
+
+	/**
+	 * Copies values from a row.
+	 *
+	 * @return true if the values were copied; false if the row is not within
+	 * the extents
+	 */
+	private boolean read(int column, int row, int len, int[] result, int off) {
+		final int slot = row % rows;
+		final int base = slot * columns + column;
+		while(true) {
+			if(!containsRow(extents, row)) return false;
+			final long seq = sequences.get(slot);
+			if((seq & 1) != 0) {
+				Thread.yield();
+				continue;
+			}
+			for(int i = 0; i < len; ++i) {
+				result[off + i] = values.get(base + i);
+			}
+			if(sequences.get(slot) == seq) {
+				// the slot is only reused after the row leaves the extents
+				return containsRow(extents, row);
+			}
+		}
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		checkColumns(column, 1);
+		final int slot = row % rows;
+		final int index = slot * columns + column;
+		while(true) {
+			checkRows(column, row, 1);
+			final long seq = sequences.get(slot);
+			if((seq & 1) != 0) {
+				Thread.yield();
+				continue;
+			}
+			final int value = values.get(index);
+			if(sequences.get(slot) == seq) {
+				checkRows(column, row, 1);
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		checkColumns(column, len);
+		if(!read(column, row, len, result, 0)) {
+			checkRows(column, row, 1);
+		}
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkColumns(column, width);
+		for(int r = 0; r < height; ++r) {
+			if(!read(column, row + r, width, result[r], 0)) {
+				checkRows(column, row + r, 1);
+			}
+		}
+	}
+
+	/**
+	 * Takes a snapshot by copying the rows.  Rows that scroll off the top of
+	 * the buffer while the snapshot is being taken are left out.
+	 */
+	@Override
+	public BufferSnapshot snapshot(int row, int height) {
+		final long version = this.version;
+		final Rectangle extents = this.extents;
+		final int first = Math.max(row, extents.y);
+		final int last = Math.min(row + height, extents.y + extents.height);
+		final int[][] result = new int[Math.max(0, last - first)][];
+		int start = 0;
+		for(int r = 0; r < result.length; ++r) {
+			result[r] = new int[columns];
+			if(!read(0, first + r, columns, result[r], 0)) {
+				start = r + 1;
+			}
+		}
+		return new BufferSnapshot(version, extents, first + start, Arrays.copyOfRange(result, start, result.length));
+	}
+
+	private void write(int column, int row, int[] values, int off, int len) {
+		final int slot = row % rows;
+		final int base = slot * columns + column;
+		beginWrite(slot);
+		for(int i = 0; i < len; ++i) {
+			this.values.lazySet(base + i, values[off + i]);
+		}
+		endWrite(slot);
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		checkColumns(column, 1);
+		extend(0, row);
+		final int slot = row % rows;
+		beginWrite(slot);
+		values.lazySet(slot * columns + column, value);
+		endWrite(slot);
+		fireContentChanged(column, row, 1, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || off + len > values.length) throw new IllegalArgumentException();
+		extend(0, row);
+		if(column < 0) {
+			len += column;
+			off -= column;
+			column = 0;
+		}
+		if(column + len > columns) {
+			len -= column + len - columns;
+		}
+		if(len <= 0) return;
+		write(column, row, values, off, len);
+		fireContentChanged(column, row, len, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		if(values.length < height || !extents.contains(column, row, width, height)) {
+			throw new IndexOutOfBoundsException();
+		}
+		for(int r = 0; r < height; ++r) {
+			if(values[r].length < width) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		for(int r = 0; r < height; ++r) {
+			write(column, row + r, values[r], 0, width);
+		}
+		fireContentChanged(column, row, width, height);
+	}
+
+	/**
+	 * Appends rows with a single change of the extents, writing only the
+	 * rows that remain in the buffer.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		if(off < 0 || rowCount < 0 || off + rowCount * columns > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int row = extents.y + extents.height;
+		grow(row + rowCount - 1);
+		fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		// skip any rows that have already scrolled off the top
+		final int skip = Math.max(0, extents.y - row);
+		for(int r = skip; r < rowCount; ++r) {
+			write(0, row + r, values, off + r * columns, columns);
+		}
+		fireContentChanged(0, row + skip, columns, rowCount - skip);
+	}
+
+	@Override
+	public void getExtents(Rectangle result) {
+		result.setBounds(extents);
+	}
+
+	@Override
+	public boolean contains(int column, int row) {
+		return extents.contains(column, row);
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row.
+	 * The buffer can only be scrolled forward.
+	 */
+	@Override
+	public void extend(int column, int row) {
+		if(grow(row)) {
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		}
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row,
+	 * without notifying observers.  The slots of the new rows are marked as
+	 * being written before the new extents are published, so readers that
+	 * see the new extents wait until the slots have been cleared.
+	 *
+	 * @return true if the extents changed; otherwise false
+	 */
+	protected boolean grow(int row) {
+		final Rectangle extents = this.extents;
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		final int tail = extents.y + extents.height;
+		if(row < tail) return false;
+		final int newY = Math.max(extents.y, row + 1 - rows);
+		final int first = Math.max(tail, newY);
+		for(int r = first; r <= row; ++r) {
+			beginWrite(r % rows);
+		}
+		this.extents = new Rectangle(extents.x, newY, extents.width, row + 1 - newY);
+		for(int r = first; r <= row; ++r) {
+			final int slot = r % rows;
+			for(int i = slot * columns; i < (slot + 1) * columns; ++i) {
+				values.lazySet(i, VgaBufferElement.DEFAULT_VALUE);
+			}
+			endWrite(slot);
+		}
+		return true;
+	}
+}
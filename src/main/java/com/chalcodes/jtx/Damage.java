@@ -0,0 +1,83 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+
+/**
+ * The bounding rectangle of the regions changed since it was last taken, by
+ * which buffers and observers merge content events into one.  Empty regions
+ * are ignored.
+ * <p>
+ * Instances are not thread-safe, but {@link #isDamaged()} may be called
+ * without the lock that guards the other methods, so that a reader can skip
+ * undamaged regions without taking it.
+ */
+final class Damage {
+	private volatile boolean damaged;
+	private int left;
+	private int top;
+	private int right;
+	private int bottom;
+
+	/**
+	 * Adds a region to the damage.
+	 */
+	void add(int x, int y, int width, int height) {
+		if(width <= 0 || height <= 0) return;
+		if(damaged) {
+			left = Math.min(left, x);
+			top = Math.min(top, y);
+			right = Math.max(right, x + width);
+			bottom = Math.max(bottom, y + height);
+		}
+		else {
+			left = x;
+			top = y;
+			right = x + width;
+			bottom = y + height;
+			damaged = true;
+		}
+	}
+
+	/**
+	 * Returns true if any region has been added since the damage was last
+	 * taken or cleared.
+	 */
+	boolean isDamaged() {
+		return damaged;
+	}
+
+	/**
+	 * Reduces the damage to the part that lies within the specified bounds.
+	 * The damage is cleared if no part of it does.
+	 */
+	void clip(Rectangle bounds) {
+		if(!damaged) return;
+		left = Math.max(left, bounds.x);
+		top = Math.max(top, bounds.y);
+		right = Math.min(right, bounds.x + bounds.width);
+		bottom = Math.min(bottom, bounds.y + bounds.height);
+		if(left >= right || top >= bottom) {
+			damaged = false;
+		}
+	}
+
+	/**
+	 * Copies the damage into the specified rectangle and clears it.
+	 *
+	 * @return true if there was any damage; otherwise false, and the
+	 * rectangle is unchanged
+	 */
+	boolean take(Rectangle result) {
+		if(!damaged) return false;
+		result.setBounds(left, top, right - left, bottom - top);
+		damaged = false;
+		return true;
+	}
+
+	/**
+	 * Discards the damage.
+	 */
+	void clear() {
+		damaged = false;
+	}
+}
@@ -1,7 +1,9 @@
 package com.chalcodes.jtx;
 
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
@@ -11,6 +13,7 @@ import java.awt.event.MouseEvent;
 
 import javax.swing.JComponent;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 /**
@@ -21,6 +24,14 @@ import javax.swing.Timer;
 public class Display extends JComponent implements BufferObserver, StickyScrollable {
 	private static final long serialVersionUID = 4118501272135028272L;
 	private static final int TEXT_BLINK_INTERVAL = 750;
+	private static final int JUMP_SCROLL_FRAME_INTERVAL = 16;
+	/** The period over which the rate of new rows is sampled, in ns. */
+	private static final long RATE_SAMPLE_PERIOD = 100000000L;
+	/**
+	 * The default rate of new rows per second above which the display jump
+	 * scrolls.
+	 */
+	public static final int DEFAULT_JUMP_SCROLL_THRESHOLD = 300;
 	
 	protected final Buffer buffer;
 	protected final SoftFont font;
@@ -41,6 +52,47 @@ public class Display extends JComponent implements BufferObserver, StickyScrolla
 	protected int deltaY = 0;
 
 	protected boolean blinkOn = true;
+	/**
+	 * Flow control to which painting is reported, or null.
+	 */
+	protected FlowControl flowControl;
+	/**
+	 * The shared cache of rendered rows this display paints from, or null.
+	 * Set by {@link RowTileCache#attach(Display)}.
+	 */
+	protected RowTileCache tileCache;
+	/**
+	 * The rate of new rows per second above which the display jump scrolls,
+	 * or zero if it never jump scrolls.
+	 */
+	protected int jumpScrollThreshold = DEFAULT_JUMP_SCROLL_THRESHOLD;
+	/**
+	 * True while jump scrolling.  Events only mark the display as changed,
+	 * and the frame timer lays out and repaints the latest state.
+	 */
+	protected boolean jumpScrolling;
+	private boolean frameChanged;
+	private final Timer frameTimer = new Timer(JUMP_SCROLL_FRAME_INTERVAL, new ActionListener() {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			jumpScrollFrame();
+		}
+	});
+	/** Smoothed rate of new rows per second. */
+	private double rowRate;
+	private long sampleStart;
+	private int sampleRows;
+	private boolean sampling;
+	/**
+	 * The rendering of the visible rows.  Events mark the changed cells
+	 * dirty, and painting renders only the dirty cells before drawing it.
+	 */
+	final BackBuffer backBuffer;
+	/** Reused by {@link #paintComponent(Graphics)} in the Swing thread. */
+	private final Rectangle paintClip = new Rectangle();
+	private final Rectangle visibleRect = new Rectangle();
+	private final Rectangle paintExtents = new Rectangle();
+	private int[] paintRun = new int[0];
 	
 	// TODO reconsider linking display to buffer in display ctor.
 	// problem described in SynchronizedDisplay javadoc.
@@ -65,6 +117,7 @@ public class Display extends JComponent implements BufferObserver, StickyScrolla
 		initialViewportWidth = columns * glyphWidth;
 		initialViewportHeight = rows * glyphHeight;
 		extents = buffer.getExtents();
+		backBuffer = new BackBuffer(glyphWidth, glyphHeight);
 		
 		// autoscroll
 		addMouseMotionListener(new MouseAdapter() {
@@ -87,38 +140,164 @@ public class Display extends JComponent implements BufferObserver, StickyScrolla
 				@Override
 				public void actionPerformed(ActionEvent e) {
 					blinkOn = !blinkOn;
-					repaint();
+					if(backBuffer.markBlinking()) {
+						repaint();
+					}
 				}
 			}).start();
 		}		
 	}
 	
+	/**
+	 * Renders the dirty cells of the visible rows into the back buffer, then
+	 * draws the back buffer.  Rows in the clip but outside the visible rect,
+	 * such as when printing or when the display is not in a viewport, are
+	 * rendered straight to the graphics instead of growing the back buffer.
+	 */
 	@Override
 	protected void paintComponent(Graphics g) {
-		final Rectangle paintClip = g.getClipBounds();
+		// an unclipped graphics leaves the bounds of the component
+		final Rectangle paintClip = this.paintClip;
+		paintClip.setBounds(0, 0, getWidth(), getHeight());
+		g.getClipBounds(paintClip);
 //		System.out.println("paint clip: " + paintClip);
 		
-		// determine the cell range touched by the clip
-		final Point topLeftCell = getBufferCoordinates(paintClip.x, paintClip.y);
-		final Point bottomRightCell = getBufferCoordinates(paintClip.x + paintClip.width - 1, paintClip.y + paintClip.height - 1);
+		// counted before the snapshot, so rows written while painting are not
+		// counted as rendered
+		final FlowControl flow = flowControl;
+		final long mark = flow == null ? 0 : flow.getWritten();
+		
+		// not correcting for deltaY here causes jitter when tracking
+		// scrolling content.  correcting causes black bars at the top.
+		// jitter is minimal at speeds under 300 lines/sec.
+		final Rectangle extents = this.paintExtents;
+		getPaintExtents(extents);
+		final int extentsY = extents.y;
+		
+		// the back buffer holds whole rows covering the visible rect
+		final Rectangle visible = this.visibleRect;
+		computeVisibleRect(visible);
+		final int firstRow;
+		final int lastRow;
+		if(visible.isEmpty()) {
+			firstRow = extentsY;
+			lastRow = extentsY - 1;
+		}
+		else {
+			firstRow = (int) Math.floor(((double) visible.y) / glyphHeight) + extentsY;
+			lastRow = (int) Math.floor(((double) visible.y + visible.height - 1) / glyphHeight) + extentsY;
+		}
+		final GraphicsConfiguration gc = getGraphicsConfiguration();
+		// a raster font needs a TYPE_INT_RGB back buffer
+		backBuffer.setWindow(font instanceof RasterSoftFont ? null : gc, extents.x, firstRow, extents.width, lastRow - firstRow + 1);
+		
+		// dirty cells are taken before the snapshot, so cells written after
+		// the snapshot are still dirty for the next paint
+		if(backBuffer.takeDirty()) {
+			// the snapshot is immutable, so rendering needs no lock
+			final BufferSnapshot snapshot = getSnapshot(backBuffer.getDirtyTop(), backBuffer.getDirtyHeight());
+			if(!backBuffer.render(snapshot, font, tileCache, blinkOn, gc)) {
+				// the font kept losing its glyphs; try again later
+				repaint();
+			}
+		}
+		backBuffer.draw(g, (backBuffer.getTop() - extentsY) * glyphHeight);
+		
+		if(!paintClip.isEmpty()) {
+			final int clipFirst = (int) Math.floor(((double) paintClip.y) / glyphHeight) + extentsY;
+			final int clipLast = (int) Math.floor(((double) paintClip.y + paintClip.height - 1) / glyphHeight) + extentsY;
+			if(lastRow < firstRow) {
+				paintRows(g, extents, clipFirst, clipLast, gc);
+			}
+			else {
+				paintRows(g, extents, clipFirst, Math.min(clipLast, firstRow - 1), gc);
+				paintRows(g, extents, Math.max(clipFirst, lastRow + 1), clipLast, gc);
+			}
+		}
 		
-		for(int row = topLeftCell.y; row <= bottomRightCell.y; ++row) {
-			for(int col = topLeftCell.x; col <= bottomRightCell.x; ++col) {
-				// row & col are absolute buffer coordinates - what to paint
-				// compute where to paint it, taking advantage of the fact
-				// that (extents.x, extents.y) of the buffer coordinate space
-				// corresponds to (0, 0) of the graphics coordinate space 
-				int x = (col - extents.x) * glyphWidth;
-				int y = (row - extents.y) * glyphHeight;
-				// not correcting for deltaY here causes jitter when tracking
-				// scrolling content.  correcting causes black bars at the
-				// top.  jitter is minimal at speeds under 300 lines/sec.
-				int value = buffer.getContent(col, row);
-				font.drawGlyph(value, blinkOn, g, x, y);
+		if(flow != null) {
+			flow.rendered(mark);
+		}
+	}
+
+	/**
+	 * Renders rows straight to the graphics.  Cells outside the buffer
+	 * extents are cleared to black.
+	 * 
+	 * @param g the graphics to paint to
+	 * @param extents the extents the rows are laid out by
+	 * @param firstRow the first row
+	 * @param lastRow the last row, inclusive
+	 * @param gc the configuration of the destination
+	 */
+	private void paintRows(Graphics g, Rectangle extents, int firstRow, int lastRow, GraphicsConfiguration gc) {
+		if(lastRow < firstRow) return;
+		final BufferSnapshot snapshot = getSnapshot(firstRow, lastRow - firstRow + 1);
+		final int width = extents.width * glyphWidth;
+		if(paintRun.length < extents.width) {
+			paintRun = new int[extents.width];
+		}
+		final boolean framed = tileCache == null;
+		for(int attempt = 0; ; ++attempt) {
+			if(framed) {
+				font.beginFrame(g);
+			}
+			for(int row = firstRow; row <= lastRow; ++row) {
+				final int y = (row - extents.y) * glyphHeight;
+				if(!snapshot.contains(extents.x, row)) {
+					g.setColor(Color.BLACK);
+					g.fillRect(0, y, width, glyphHeight);
+				}
+				else if(tileCache != null) {
+					g.drawImage(tileCache.getTile(snapshot, row, blinkOn, gc), 0, y, null);
+				}
+				else {
+					snapshot.getContent(extents.x, row, extents.width, paintRun);
+					font.drawRun(paintRun, 0, extents.width, blinkOn, g, 0, y);
+				}
+			}
+			if(!framed || font.endFrame()) {
+				return;
+			}
+			if(attempt > 0) {
+				// the font kept losing its glyphs; try again later
+				repaint(0, (firstRow - extents.y) * glyphHeight, width, (lastRow - firstRow + 1) * glyphHeight);
+				return;
 			}
 		}
 	}
 
+	/**
+	 * Copies the extents that painting lays out the rows by.  The extents
+	 * are changed by the observer methods, so a subclass whose observer
+	 * methods are called in other threads must override this method to copy
+	 * them under the same lock.
+	 * 
+	 * @param result the object in which to store the extents
+	 */
+	protected void getPaintExtents(Rectangle result) {
+		result.setBounds(extents);
+	}
+
+	/**
+	 * Takes a snapshot of the rows to be rendered.
+	 * 
+	 * @param row the first row
+	 * @param height the number of rows
+	 * @return the snapshot
+	 */
+	protected BufferSnapshot getSnapshot(int row, int height) {
+		return buffer.snapshot(row, height);
+	}
+
+	private int getBufferColumn(int x) {
+		return (int) Math.floor(((double)x) / glyphWidth) + extents.x;
+	}
+
+	private int getBufferRow(int y) {
+		return (int) Math.floor(((double)y) / glyphHeight) + extents.y;
+	}
+
 	/**
 	 * Calculates the buffer coordinates corresponding to a point in the
 	 * component's coordinate space, storing the value in <tt>result</tt>.
@@ -131,9 +310,7 @@ public class Display extends JComponent implements BufferObserver, StickyScrolla
 	 * @param result the object in which to store the buffer coordinates
 	 */
 	public void getBufferCoordinates(int x, int y, Point result) {
-		int col = (int) Math.floor(((double)x) / glyphWidth) + extents.x;
-		int row = (int) Math.floor(((double)y) / glyphHeight) + extents.y;
-		result.setLocation(col, row);
+		result.setLocation(getBufferColumn(x), getBufferRow(y));
 	}
 	
 	/**
@@ -178,21 +355,169 @@ public class Display extends JComponent implements BufferObserver, StickyScrolla
 		return buffer;
 	}
 	
+	/**
+	 * Sets the flow control to which this display reports painting.  The
+	 * flow control is added to the buffer's observers, and any previous flow
+	 * control is removed.
+	 * 
+	 * @param flowControl the flow control, or null
+	 */
+	public void setFlowControl(FlowControl flowControl) {
+		if(this.flowControl != null) {
+			buffer.removeBufferObserver(this.flowControl);
+		}
+		this.flowControl = flowControl;
+		if(flowControl != null) {
+			// so it can count rows from the current extents
+			flowControl.extentsChanged(buffer, extents.x, extents.y, extents.width, extents.height);
+			buffer.addBufferObserver(flowControl);
+		}
+	}
+	
+	/**
+	 * Sets the rate of new rows above which this display jump scrolls.
+	 * While jump scrolling, the display renders only the latest state of the
+	 * buffer once per frame instead of every intermediate scroll position.
+	 * It returns to smooth scrolling when the rate falls below half the
+	 * threshold.
+	 * 
+	 * @param rowsPerSecond the threshold, or zero to never jump scroll
+	 */
+	public void setJumpScrollThreshold(int rowsPerSecond) {
+		if(rowsPerSecond < 0) throw new IllegalArgumentException();
+		jumpScrollThreshold = rowsPerSecond;
+	}
+	
+	/**
+	 * Returns true if this display is currently jump scrolling.
+	 */
+	public boolean isJumpScrolling() {
+		return jumpScrolling;
+	}
+	
+	/**
+	 * Returns the current time in nanoseconds, by which the rate of new rows
+	 * is sampled.  Subclasses may override this to supply another clock.
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Adds new rows to the current rate sample, updating the smoothed rate
+	 * and entering jump scroll mode when a sample period has passed.  The
+	 * first sample period starts with the first call.
+	 */
+	private void sampleRate(int rows) {
+		sampleRows += rows;
+		final long now = nanoTime();
+		if(!sampling) {
+			sampling = true;
+			sampleStart = now;
+		}
+		final long elapsed = now - sampleStart;
+		if(elapsed >= RATE_SAMPLE_PERIOD) {
+			rowRate = (rowRate + sampleRows * 1e9 / elapsed) / 2;
+			sampleStart = now;
+			sampleRows = 0;
+			if(!jumpScrolling && jumpScrollThreshold > 0 && rowRate > jumpScrollThreshold) {
+				jumpScrolling = true;
+				frameTimer.start();
+			}
+		}
+	}
+	
+	/**
+	 * Called by the frame timer while jump scrolling.  Lays out and repaints
+	 * the display if anything changed since the last frame, and leaves jump
+	 * scroll mode if the rate of new rows has dropped.
+	 */
+	protected void jumpScrollFrame() {
+		if(!jumpScrolling) return;
+		sampleRate(0);
+		if(frameChanged) {
+			frameChanged = false;
+			revalidate();
+			repaint();
+		}
+		if(jumpScrollThreshold == 0 || rowRate < jumpScrollThreshold / 2) {
+			jumpScrolling = false;
+			frameTimer.stop();
+		}
+	}
+	
+	/**
+	 * Lays out the display again and repaints it.  When only rows were added
+	 * at the bottom, the viewport blits the rows that stay visible and only
+	 * the new rows are repainted.  When <tt>extents.y</tt> advances, every
+	 * row moves up in component coordinates, but the back buffer moves its
+	 * rows with a single blit and renders only the rows that enter it, so
+	 * the repaint costs one <tt>drawImage</tt> plus the new rows.
+	 */
 	@Override
 	public void extentsChanged(Buffer source, int x, int y, int width, int height) {
 //		System.out.printf("extents: %d, %d, %d, %d\n", x, y, width, height);
+		sampleRate(Math.max(0, y + height - extents.y - extents.height));
+		final int oldBottom = extents.y + extents.height;
+		final boolean grewDown = x == extents.x && y == extents.y && width == extents.width;
+		if(x != extents.x || width != extents.width) {
+			backBuffer.markAllDirty();
+		}
+		else {
+			// rows entering the extents were rendered as empty space
+			backBuffer.markDirty(x, y, width, Math.min(extents.y, y + height) - y);
+			backBuffer.markDirty(x, Math.max(oldBottom, y), width, y + height - Math.max(oldBottom, y));
+		}
 		deltaY += y - extents.y;
 		extents.setBounds(x, y, width, height);
+		if(jumpScrolling) {
+			frameChanged = true;
+			return;
+		}
 		revalidate();
-		repaint();
+		if(grewDown) {
+			if(y + height > oldBottom) {
+				repaint(0, (oldBottom - y) * glyphHeight, width * glyphWidth, (y + height - oldBottom) * glyphHeight);
+			}
+		}
+		else {
+			repaint();
+		}
 	}
 
 	@Override
 	public void contentChanged(Buffer source, int x, int y, int width, int height) {
+		backBuffer.markDirty(x, y, width, height);
+		if(jumpScrolling) {
+			frameChanged = true;
+			return;
+		}
 		// repaint only the changed region
 		repaint((x - extents.x) * glyphWidth, (y - extents.y) * glyphHeight, width * glyphWidth, height * glyphHeight);
 	}
 
+	/**
+	 * Moves the region within the back buffer and marks only the exposed
+	 * rows dirty.  When jump scrolling or not called in the Swing thread, the
+	 * whole region is marked dirty instead, since the Swing thread may be
+	 * rendering into the back buffer.
+	 */
+	@Override
+	public void contentScrolled(Buffer source, int x, int y, int width, int height, int distance) {
+		sampleRate(Math.abs(distance));
+		if(!jumpScrolling && SwingUtilities.isEventDispatchThread()) {
+			backBuffer.scroll(x, y, width, height, distance);
+		}
+		else {
+			backBuffer.markDirty(x, y, width, height);
+		}
+		if(jumpScrolling) {
+			frameChanged = true;
+			return;
+		}
+		repaint((x - extents.x) * glyphWidth, (y - extents.y) * glyphHeight, width * glyphWidth, height * glyphHeight);
+	}
+
 	@Override
 	public boolean isPreferredSizeSet() {
 		return true;
@@ -0,0 +1,134 @@
+package com.chalcodes.jtx;
+
+/**
+ * Flow control between the threads writing a buffer and a {@link Display}
+ * rendering it.  A <tt>FlowControl</tt> observes the buffer and counts the
+ * rows written to it: rows added to the bottom of the buffer and rows moved
+ * by scrolling a region.  The display reports how many of those rows it had
+ * seen each time it paints.  The difference is the backlog of unrendered
+ * rows.
+ * <p>
+ * When the backlog reaches the high-water mark, writers should stop writing
+ * until the display catches up.  They can block in {@link #await()} or
+ * {@link #await(long)}, or poll {@link #hasCapacity()} and stop reading
+ * their input, for example by deregistering a socket channel from its
+ * selector.  Writers must not wait while holding the buffer lock, since the
+ * display needs it to paint.  A display that is not showing does not paint,
+ * so writers that cannot rule this out should wait with a timeout.
+ *
+ * @see Display#setFlowControl(FlowControl)
+ */
+public class FlowControl implements BufferObserver {
+	protected final int highWater;
+	/** The number of rows written. */
+	private long written;
+	/** The number of written rows the display has rendered. */
+	private long rendered;
+	/** The last row of the buffer extents, exclusive. */
+	private int tail = -1;
+
+	/**
+	 * Creates a new <tt>FlowControl</tt>.
+	 *
+	 * @param highWater the number of unrendered rows at which writers should
+	 * stop writing
+	 */
+	public FlowControl(int highWater) {
+		if(highWater < 1) throw new IllegalArgumentException();
+		this.highWater = highWater;
+	}
+
+	@Override
+	public synchronized void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+		if(tail >= 0 && y + height > tail) {
+			written += y + height - tail;
+		}
+		tail = y + height;
+	}
+
+	@Override
+	public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+		// rewriting rows does not add to the backlog
+	}
+
+	@Override
+	public synchronized void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+		written += Math.abs(distance);
+	}
+
+	/**
+	 * Gets the number of rows written so far.  A display calls this before
+	 * taking a snapshot to paint, and passes the result to
+	 * {@link #rendered(long)} after painting.
+	 */
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Reports that the display has rendered the rows counted by an earlier
+	 * call to {@link #getWritten()}, waking any waiting writers if the backlog
+	 * is now below the high-water mark.
+	 *
+	 * @param mark the value returned by <tt>getWritten()</tt>
+	 */
+	public synchronized void rendered(long mark) {
+		if(mark > rendered) {
+			rendered = mark;
+			if(written - rendered < highWater) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of rows written but not yet rendered.
+	 */
+	public synchronized int getBacklog() {
+		return (int) Math.min(Integer.MAX_VALUE, written - rendered);
+	}
+
+	/**
+	 * Gets the high-water mark.
+	 */
+	public int getHighWater() {
+		return highWater;
+	}
+
+	/**
+	 * Returns true if the backlog is below the high-water mark.
+	 */
+	public synchronized boolean hasCapacity() {
+		return written - rendered < highWater;
+	}
+
+	/**
+	 * Waits until the backlog is below the high-water mark.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized void await() throws InterruptedException {
+		while(written - rendered >= highWater) {
+			wait();
+		}
+	}
+
+	/**
+	 * Waits until the backlog is below the high-water mark or the timeout
+	 * expires.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true if the backlog is below the high-water mark
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized boolean await(long timeout) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while(written - rendered >= highWater) {
+			if(remaining <= 0) return false;
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,269 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A scrollback buffer that stores its content in a memory-mapped file
+ * instead of the Java heap.  The ring semantics and absolute row numbering
+ * are the same as those of {@link ScrollbackBuffer}, but the heap footprint
+ * of the buffer does not depend on the number of rows.  This makes it
+ * practical to keep millions of lines of scrollback without long garbage
+ * collection pauses.
+ * <p>
+ * The file is divided into segments of whole rows, each of which is mapped
+ * separately, because a single mapping cannot exceed 2 GiB.  The operating
+ * system pages the segments in and out as needed.  The content of the file
+ * is not meant to survive the buffer; any existing content is discarded when
+ * the buffer is created.
+ */
+public class MappedScrollbackBuffer extends AbstractBuffer implements Closeable {
+	/** The maximum size of a single mapped segment, in bytes. */
+	protected static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+	protected final int columns;
+	protected final int rows;
+	protected final int rowsPerSegment;
+	protected final IntBuffer[] segments;
+	protected final Rectangle extents;
+	/** A row of default values used to clear rows as they are recycled. */
+	protected final int[] blank;
+	protected final RandomAccessFile file;
+
+	/**
+	 * Creates a new <tt>MappedScrollbackBuffer</tt> backed by a temporary
+	 * file.  The file is deleted when the virtual machine exits.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 * @throws IOException if the temporary file cannot be created or mapped
+	 */
+	public MappedScrollbackBuffer(int columns, int rows) throws IOException {
+		this(columns, rows, createTempFile());
+	}
+
+	/**
+	 * Creates a new <tt>MappedScrollbackBuffer</tt> backed by the specified
+	 * file.  Any existing content of the file is discarded.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 * @param path the file in which to store the buffer content
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public MappedScrollbackBuffer(int columns, int rows, File path) throws IOException {
+		if(columns < 1 || rows < 1) {
+			throw new IllegalArgumentException("buffer must have at least one column and one row");
+		}
+		if(columns > MAX_SEGMENT_SIZE / 4) {
+			throw new IllegalArgumentException("too many columns");
+		}
+		this.columns = columns;
+		this.rows = rows;
+		rowsPerSegment = MAX_SEGMENT_SIZE / (columns * 4);
+		segments = new IntBuffer[(rows + rowsPerSegment - 1) / rowsPerSegment];
+		extents = new Rectangle(0, 0, columns, 0);
+		blank = new int[columns];
+		Arrays.fill(blank, VgaBufferElement.DEFAULT_VALUE);
+
+		file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			file.setLength((long) rows * columns * 4);
+			final FileChannel channel = file.getChannel();
+			for(int i = 0; i < segments.length; ++i) {
+				long position = (long) i * rowsPerSegment * columns * 4;
+				long size = (long) Math.min(rowsPerSegment, rows - i * rowsPerSegment) * columns * 4;
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, size)
+						.order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		}
+		catch(IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private static File createTempFile() throws IOException {
+		File file = File.createTempFile("jtx", ".scrollback");
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * Positions the segment containing the specified row at the first
+	 * column of the row, and returns the segment.
+	 */
+	protected IntBuffer seek(int row, int column) {
+		if(row < extents.y || row >= extents.y + extents.height) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, extents.y %d", column, row, extents.y));
+		}
+		return seekUnchecked(row, column);
+	}
+
+	private IntBuffer seekUnchecked(int row, int column) {
+		final int slot = row % rows;
+		final IntBuffer segment = segments[slot / rowsPerSegment];
+		segment.position((slot % rowsPerSegment) * columns + column);
+		return segment;
+	}
+
+	private void checkColumns(int column, int len) {
+		if(column < 0 || len < 0 || column + len > columns) {
+			throw new IndexOutOfBoundsException(String.format("col %d, len %d, columns %d", column, len, columns));
+		}
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		checkColumns(column, 1);
+		return seek(row, column).get();
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		checkColumns(column, len);
+		seek(row, column).get(result, 0, len);
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkColumns(column, width);
+		for(int r = 0; r < height; ++r) {
+			seek(row + r, column).get(result[r], 0, width);
+		}
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		checkColumns(column, 1);
+		extend(0, row);
+		seekUnchecked(row, column).put(value);
+		fireContentChanged(column, row, 1, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || off + len > values.length) throw new IllegalArgumentException();
+		extend(0, row);
+		if(column < 0) {
+			len += column;
+			off -= column;
+			column = 0;
+		}
+		if(column + len > columns) {
+			len -= column + len - columns;
+		}
+		if(len <= 0) return;
+		seekUnchecked(row, column).put(values, off, len);
+		fireContentChanged(column, row, len, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		if(values.length < height || !extents.contains(column, row, width, height)) {
+			throw new IndexOutOfBoundsException();
+		}
+		for(int r = 0; r < height; ++r) {
+			if(values[r].length < width) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		for(int r = 0; r < height; ++r) {
+			seekUnchecked(row + r, column).put(values[r], 0, width);
+		}
+		fireContentChanged(column, row, width, height);
+	}
+
+	@Override
+	public void getExtents(Rectangle result) {
+		result.setBounds(extents);
+	}
+
+	@Override
+	public boolean contains(int column, int row) {
+		return extents.contains(column, row);
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row.
+	 * Behaves exactly like {@link ScrollbackBuffer#extend(int, int)}.
+	 */
+	@Override
+	public void extend(int column, int row) {
+		if(grow(row)) {
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		}
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row,
+	 * without notifying observers.
+	 *
+	 * @return true if the extents changed; otherwise false
+	 */
+	protected boolean grow(int row) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		int tail = extents.y + extents.height;
+		if(row < tail) return false;
+		int newRows = row + 1 - tail; // +1 because row is inclusive, tail is exclusive
+
+		if(tail >= rows) { // buffer is full and scrolling
+			int clear = Math.min(newRows, rows);
+			for(int i = tail; i < tail + clear; ++i) {
+				seekUnchecked(i, 0).put(blank);
+			}
+			extents.y += newRows;
+		}
+		else if(row < rows) { // buffer is not full, and this will not make it scroll
+			extents.height += newRows;
+		}
+		else {
+			// split into two recursive calls that match the above conditions
+			grow(rows - 1);
+			grow(row);
+		}
+		return true;
+	}
+
+	/**
+	 * Appends rows with a single change of the extents, copying each row
+	 * straight from <tt>values</tt> into its segment.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		if(off < 0 || rowCount < 0 || off + rowCount * columns > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int row = extents.y + extents.height;
+		grow(row + rowCount - 1);
+		fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		// skip any rows that have already scrolled off the top
+		final int skip = Math.max(0, extents.y - row);
+		final int first = row + skip;
+		final int height = rowCount - skip;
+		for(int r = 0; r < height; ++r) {
+			seekUnchecked(first + r, 0).put(values, off + (skip + r) * columns, columns);
+		}
+		fireContentChanged(0, first, columns, height);
+	}
+
+	/**
+	 * Closes the backing file.  The mapped segments remain valid until they
+	 * are garbage collected, but the buffer should not be used after it is
+	 * closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
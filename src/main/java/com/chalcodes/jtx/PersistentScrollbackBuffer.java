@@ -0,0 +1,211 @@
+package com.chalcodes.jtx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A scrollback buffer that saves its rows in a {@link SegmentStore}, so
+ * that its content survives a restart.  Rows are written to the store when
+ * they scroll off the top of the buffer and when the buffer is flushed or
+ * closed.  Rows that have not changed since they were last stored are not
+ * written again.
+ * <p>
+ * When a buffer is created with a store that already contains rows, the
+ * buffer extents are restored so that the last row in the store is the last
+ * row of the buffer.  Every row keeps the absolute row number it had before
+ * the restart.  The rows are not read from the store until they are first
+ * accessed.
+ * <p>
+ * Store errors are reported by throwing an
+ * <tt>IllegalStateException</tt> whose cause is the original
+ * <tt>IOException</tt>.
+ */
+public class PersistentScrollbackBuffer extends ScrollbackBuffer implements Closeable {
+	protected final SegmentStore store;
+	/** Slots whose rows have not been read from the store yet. */
+	protected final BitSet unloaded = new BitSet();
+	/** Slots whose rows have changed since they were last stored. */
+	protected final BitSet dirty = new BitSet();
+
+	/**
+	 * Creates a new <tt>PersistentScrollbackBuffer</tt>, restoring any rows
+	 * already in the store.
+	 *
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 * @param store the store in which to save rows; its number of columns
+	 * determines the number of columns of the buffer
+	 */
+	public PersistentScrollbackBuffer(int rows, SegmentStore store) {
+		super(store.getColumns(), rows);
+		this.store = store;
+		final int tail = store.getRowCount();
+		if(tail > 0) {
+			extents.y = Math.max(0, tail - rows);
+			extents.height = tail - extents.y;
+			for(int row = extents.y; row < tail; ++row) {
+				unloaded.set(row % rows);
+			}
+		}
+	}
+
+	/**
+	 * Gets the store in which this buffer saves its rows.  Rows that have
+	 * scrolled off the top of the buffer can still be read from the store.
+	 */
+	public SegmentStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Reads any rows in the specified range that have not been read from the
+	 * store yet.
+	 */
+	protected void load(int row, int height) {
+		final int first = Math.max(row, extents.y);
+		final int last = Math.min(row + height, extents.y + extents.height);
+		for(int r = first; r < last; ++r) {
+			final int slot = r % rows;
+			if(unloaded.get(slot)) {
+				try {
+					if(!store.read(r, values, slot * columns)) {
+						Arrays.fill(values, slot * columns, (slot + 1) * columns, VgaBufferElement.DEFAULT_VALUE);
+					}
+				}
+				catch(IOException e) {
+					throw new IllegalStateException("error reading row " + r, e);
+				}
+				unloaded.clear(slot);
+			}
+		}
+	}
+
+	private void touch(int row, int height) {
+		for(int r = row; r < row + height; ++r) {
+			dirty.set(r % rows);
+		}
+	}
+
+	private void save(int row) throws IOException {
+		final int slot = row % rows;
+		if(dirty.get(slot)) {
+			store.write(row, values, slot * columns);
+			dirty.clear(slot);
+		}
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		load(row, 1);
+		return super.getContent(column, row);
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		load(row, 1);
+		super.getContent(column, row, len, result);
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		load(row, height);
+		super.getContent(column, row, width, height, result);
+	}
+
+	@Override
+	public void getRows(int row, int height, int[] result, int off) {
+		load(row, height);
+		super.getRows(row, height, result, off);
+	}
+
+	@Override
+	public void visitRows(int row, int height, RowVisitor visitor) {
+		load(row, height);
+		super.visitRows(row, height, visitor);
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		load(row, 1);
+		super.setContent(column, row, value);
+		touch(row, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		load(row, 1);
+		super.setContent(column, row, values, off, len);
+		touch(row, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		load(row, height);
+		super.setContent(column, row, values, width, height);
+		touch(row, height);
+	}
+
+	@Override
+	public void setRows(int row, int height, int[] values, int off) {
+		super.setRows(row, height, values, off);
+		// whole rows were replaced, so there is nothing left to load
+		for(int r = row; r < row + height; ++r) {
+			unloaded.clear(r % rows);
+		}
+		touch(row, height);
+	}
+
+	/**
+	 * Saves the rows that are about to scroll off the top of the buffer
+	 * before growing, and marks the new rows as changed.
+	 */
+	@Override
+	protected boolean grow(int row) {
+		final int oldY = extents.y;
+		final int tail = extents.y + extents.height;
+		if(row < tail) return super.grow(row);
+		final int newY = Math.max(oldY, row + 1 - rows);
+		try {
+			for(int r = oldY; r < Math.min(newY, tail); ++r) {
+				save(r);
+				unloaded.clear(r % rows);
+			}
+		}
+		catch(IOException e) {
+			throw new IllegalStateException("error writing evicted rows", e);
+		}
+		super.grow(row);
+		for(int r = Math.max(tail, extents.y); r <= row; ++r) {
+			unloaded.clear(r % rows);
+			dirty.set(r % rows);
+		}
+		return true;
+	}
+
+	/**
+	 * Saves all changed rows and flushes the store.
+	 *
+	 * @throws IOException if the rows cannot be saved
+	 */
+	public void flush() throws IOException {
+		for(int row = extents.y; row < extents.y + extents.height; ++row) {
+			save(row);
+		}
+		store.flush();
+	}
+
+	/**
+	 * Saves all changed rows and closes the store.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			store.close();
+		}
+	}
+}
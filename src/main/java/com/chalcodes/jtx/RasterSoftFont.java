@@ -0,0 +1,187 @@
+package com.chalcodes.jtx;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A <tt>SoftFont</tt> that rasterizes VGA text mode characters in software.
+ * It reads the same glyph sheets as {@link VgaSoftFont}, but keeps only a
+ * one-bit mask of each glyph and the foreground and background color of each
+ * attribute.  Glyphs are written straight into the <tt>int</tt> pixels of a
+ * <tt>TYPE_INT_RGB</tt> image by
+ * {@link #drawRun(int[], int, int, boolean, int[], int, int, int)}, without
+ * going through Java2D at all.  This is much faster than blitting from a
+ * volatile image when Java2D acceleration is not available, such as in
+ * headless environments.
+ * <p>
+ * The <tt>Graphics</tt> methods rasterize into a reused strip image and draw
+ * it, so they may only be called by one thread at a time.  A {@link Display}
+ * using this font renders into its back buffer directly.  Glyphs must be at
+ * most 32 pixels wide.
+ */
+public class RasterSoftFont extends AbstractSoftFont {
+	protected final Dimension glyphSize;
+	/**
+	 * The mask of each row of each glyph, indexed by
+	 * <tt>character * glyphHeight + row</tt>.  Bit <i>n</i> is set if
+	 * pixel <i>n</i> from the left is in the foreground.
+	 */
+	protected final int[] masks;
+	/** The foreground color of each color attribute. */
+	protected final int[] foregrounds = new int[128];
+	/** The background color of each color attribute. */
+	protected final int[] backgrounds = new int[128];
+	/** The mask of the underline, and its top row and height. */
+	protected final int underlineMask;
+	protected final int underlineTop;
+	protected final int underlineHeight;
+	/** Reused by the <tt>Graphics</tt> methods. */
+	private BufferedImage strip;
+	private final int[] glyph = new int[1];
+
+	public RasterSoftFont(BufferedImage glyphSheet) {
+		final int width = glyphSheet.getWidth();
+		final int height = glyphSheet.getHeight();
+		if(width == 0 || height == 0) {
+			throw new IllegalArgumentException("glyph sheet must have non-zero width and height");
+		}
+		if(width % 256 != 0 || height % 128 != 0) {
+			throw new IllegalArgumentException("glyph sheet dimensions must be a multiple of 256x128 pixels");
+		}
+		if(width / 256 > 32) {
+			throw new IllegalArgumentException("glyphs must be at most 32 pixels wide");
+		}
+		glyphSize = new Dimension(width / 256, height / 128);
+		final int gw = glyphSize.width;
+		final int gh = glyphSize.height;
+
+		// foreground pixels differ between white on black and black on black
+		final int whiteOnBlack = VgaColors.WHITE * gh;
+		masks = new int[256 * gh];
+		int fgX = -1, fgY = -1, bgX = -1, bgY = -1;
+		for(int c = 0; c < 256; ++c) {
+			for(int dy = 0; dy < gh; ++dy) {
+				int mask = 0;
+				for(int dx = 0; dx < gw; ++dx) {
+					final int x = c * gw + dx;
+					if(glyphSheet.getRGB(x, dy) != glyphSheet.getRGB(x, whiteOnBlack + dy)) {
+						mask |= 1 << dx;
+						if(fgX < 0) { fgX = x; fgY = dy; }
+					}
+					else if(bgX < 0) { bgX = x; bgY = dy; }
+				}
+				masks[c * gh + dy] = mask;
+			}
+		}
+
+		// sample the colors of each attribute from a foreground and a
+		// background pixel
+		for(int attr = 0; attr < 128; ++attr) {
+			foregrounds[attr] = fgX < 0 ? 0 : glyphSheet.getRGB(fgX, attr * gh + fgY) & 0xFFFFFF;
+			backgrounds[attr] = bgX < 0 ? 0 : glyphSheet.getRGB(bgX, attr * gh + bgY) & 0xFFFFFF;
+		}
+
+		// the underline is the top row of glyph 219, as in VgaSoftFont
+		underlineMask = masks[219 * gh];
+		int top = Math.round((float) gh * 7 / 8);
+		if(top == gh) {
+			--top;
+		}
+		underlineTop = top;
+		int thickness = Math.round((float) gh * 1 / 16);
+		if(thickness == 0) {
+			thickness = 1;
+		}
+		underlineHeight = Math.min(thickness, gh - top);
+	}
+
+	public RasterSoftFont(String resource) throws IOException {
+		this(ImageIO.read(RasterSoftFont.class.getResourceAsStream(resource)));
+	}
+
+	public RasterSoftFont() throws IOException {
+		this("/com/chalcodes/jtx/vga9x16.png");
+	}
+
+	@Override
+	public Dimension getGlyphSize() {
+		return glyphSize;
+	}
+
+	@Override
+	public void drawGlyph(int value, boolean blinkOn, Graphics graphics, int x, int y) {
+		glyph[0] = value;
+		drawRun(glyph, 0, 1, blinkOn, graphics, x, y);
+	}
+
+	/**
+	 * Rasterizes the run into a strip image and draws it.
+	 */
+	@Override
+	public void drawRun(int[] values, int off, int len, boolean blinkOn, Graphics graphics, int x, int y) {
+		if(len <= 0) return;
+		final int width = len * glyphSize.width;
+		if(strip == null || strip.getWidth() < width) {
+			strip = new BufferedImage(width, glyphSize.height, BufferedImage.TYPE_INT_RGB);
+		}
+		final int[] raster = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+		drawRun(values, off, len, blinkOn, raster, strip.getWidth(), 0, 0);
+		graphics.drawImage(strip, x, y, x + width, y + glyphSize.height, 0, 0, width, glyphSize.height, null);
+	}
+
+	/**
+	 * Draws a run of glyphs from left to right directly into the pixels of a
+	 * <tt>TYPE_INT_RGB</tt> image.
+	 *
+	 * @param values the packed characters and attributes
+	 * @param off the offset in <tt>values</tt> of the first glyph
+	 * @param len the number of glyphs
+	 * @param blinkOn whether characters with the blink attribute should be rendered on or off
+	 * @param raster the pixels of the image
+	 * @param scanline the width of the image in pixels
+	 * @param x the x coordinate of the first glyph
+	 * @param y
+	 * @see VgaBufferElement
+	 */
+	public void drawRun(int[] values, int off, int len, boolean blinkOn, int[] raster, int scanline, int x, int y) {
+		final int gw = glyphSize.width;
+		final int gh = glyphSize.height;
+		for(int i = 0; i < len; ++i) {
+			final int value = values[off + i];
+			int colorAttr = (value & 0x7F0000) >> 16;
+			if((value & VgaBufferElement.INVERTED) != 0 ^ (value & VgaBufferElement.SELECTED) != 0) {
+				colorAttr ^= 0x3F;
+			}
+			final int fg = foregrounds[colorAttr];
+			final int bg = backgrounds[colorAttr];
+
+			// if value has blink attribute and blink is off, draw glyph 0
+			final boolean blinkedOff = !blinkOn && (value & VgaBufferElement.BLINKING) != 0;
+			int character = blinkedOff ? 0 : value & 0xFFFF;
+			if(character > 255) character = '?';
+			final boolean underlined = !blinkedOff && (value & VgaBufferElement.UNDERLINED) != 0;
+
+			final int maskBase = character * gh;
+			int p = y * scanline + x + i * gw;
+			for(int dy = 0; dy < gh; ++dy, p += scanline) {
+				final int mask = underlined && dy >= underlineTop && dy < underlineTop + underlineHeight
+						? underlineMask : masks[maskBase + dy];
+				if(mask == 0) {
+					for(int dx = 0; dx < gw; ++dx) {
+						raster[p + dx] = bg;
+					}
+				}
+				else {
+					for(int dx = 0; dx < gw; ++dx) {
+						raster[p + dx] = (mask & (1 << dx)) != 0 ? fg : bg;
+					}
+				}
+			}
+		}
+	}
+}
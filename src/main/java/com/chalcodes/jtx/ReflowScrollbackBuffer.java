@@ -0,0 +1,380 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A scrollback buffer whose number of columns can be changed.  Writers mark
+ * rows that continue onto the next row with {@link #setWrapped(int,
+ * boolean)}.  Rows joined this way form a logical line, which is rewrapped
+ * to the new width when the buffer is resized.  Trailing blank cells of a
+ * logical line are dropped when it is rewrapped.
+ * <p>
+ * Reflowing a long history all at once would make resizing unresponsive, so
+ * {@link #resize(int, int)} only reflows enough history to fill the visible
+ * rows at the bottom of the buffer.  The rest is reflowed, newest first, by
+ * calling {@link #reflow(int)} until it returns false, typically from a
+ * <tt>javax.swing.Timer</tt>.  Each call notifies observers that the
+ * extents have grown upward to include the newly reflowed rows.  The buffer
+ * can be written and resized again while history remains to be reflowed.
+ * <p>
+ * Row numbering follows {@link ScrollbackBuffer}, except that the last row
+ * keeps its absolute row number across a resize and the rows above it are
+ * renumbered.  Row numbers cannot go below zero, so when reflowed history
+ * needs more rows than there are above row zero but the buffer is not full,
+ * every row is moved down to make room.  Observers are then notified of a
+ * change to all the content, and {@link #getRenumbered()} grows by the
+ * number of rows moved, so writers can move their own row numbers to match.
+ * History that no longer fits in the buffer after reflowing is discarded.
+ * All rows added to the buffer are filled with
+ * {@link VgaBufferElement#DEFAULT_VALUE}.
+ */
+public class ReflowScrollbackBuffer extends AbstractBuffer {
+	protected final int capacity;
+	protected int[][] values;
+	protected boolean[] wrapped;
+	protected final Rectangle extents;
+	/**
+	 * History waiting to be reflowed, newest first.  Each source ends where
+	 * the next newer one begins, at a logical line boundary.
+	 */
+	protected final List<Source> pending = new ArrayList<Source>();
+	/** The total number of rows by which every row has been moved down. */
+	protected int renumbered;
+
+	/**
+	 * Rows of an earlier layout of the buffer that have not been reflowed
+	 * yet.  The arrays are never written after they become a source.
+	 */
+	protected static class Source {
+		final int[][] values;
+		final boolean[] wrapped;
+		final int columns;
+		final int start;
+		/** One past the newest row not yet reflowed. */
+		int end;
+
+		Source(int[][] values, boolean[] wrapped, int columns, int start, int end) {
+			this.values = values;
+			this.wrapped = wrapped;
+			this.columns = columns;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Creates a new <tt>ReflowScrollbackBuffer</tt>.
+	 *
+	 * @param columns the initial number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 */
+	public ReflowScrollbackBuffer(int columns, int rows) {
+		if(columns < 1 || rows < 1) throw new IllegalArgumentException();
+		capacity = rows;
+		values = new int[rows][];
+		wrapped = new boolean[rows];
+		extents = new Rectangle(0, 0, columns, 0);
+	}
+
+	private int[] row(int row) {
+		return values[row % capacity];
+	}
+
+	private int[] blankRow() {
+		final int[] row = new int[extents.width];
+		Arrays.fill(row, VgaBufferElement.DEFAULT_VALUE);
+		return row;
+	}
+
+	private void checkRow(int column, int row) {
+		if(row < extents.y || row >= extents.y + extents.height) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, extents.y %d", column, row, extents.y));
+		}
+	}
+
+	private void checkColumns(int column, int len) {
+		if(column < 0 || len < 0 || column + len > extents.width) {
+			throw new IndexOutOfBoundsException(String.format("col %d, len %d, columns %d", column, len, extents.width));
+		}
+	}
+
+	/**
+	 * Marks whether the specified row continues onto the next row.
+	 *
+	 * @param row the row
+	 * @param wrapped true if the row is soft-wrapped onto the next row; false
+	 * if it ends a logical line
+	 */
+	public void setWrapped(int row, boolean wrapped) {
+		checkRow(0, row);
+		this.wrapped[row % capacity] = wrapped;
+	}
+
+	/**
+	 * Returns true if the specified row continues onto the next row.
+	 */
+	public boolean isWrapped(int row) {
+		checkRow(0, row);
+		return wrapped[row % capacity];
+	}
+
+	/**
+	 * Gets the total number of rows by which reflowing has moved every row
+	 * of the buffer down to make room for history.  A writer that keeps row
+	 * numbers should add the change in this value to them.
+	 */
+	public int getRenumbered() {
+		return renumbered;
+	}
+
+	/**
+	 * Returns true if some history has not been reflowed to the current
+	 * width yet.
+	 */
+	public boolean isReflowing() {
+		return !pending.isEmpty();
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		checkRow(column, row);
+		checkColumns(column, 1);
+		return row(row)[column];
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		checkRow(column, row);
+		checkColumns(column, len);
+		System.arraycopy(row(row), column, result, 0, len);
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkColumns(column, width);
+		for(int r = 0; r < height; ++r) {
+			checkRow(column, row + r);
+			System.arraycopy(row(row + r), column, result[r], 0, width);
+		}
+	}
+
+	@Override
+	public void visitRows(int row, int height, RowVisitor visitor) {
+		for(int r = row; r < row + height; ++r) {
+			checkRow(0, r);
+			visitor.visitRow(r, row(r), 0, extents.width);
+		}
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		checkColumns(column, 1);
+		extend(0, row);
+		row(row)[column] = value;
+		fireContentChanged(column, row, 1, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || off + len > values.length) throw new IllegalArgumentException();
+		extend(0, row);
+		if(column < 0) {
+			len += column;
+			off -= column;
+			column = 0;
+		}
+		if(column + len > extents.width) {
+			len -= column + len - extents.width;
+		}
+		if(len <= 0) return;
+		System.arraycopy(values, off, row(row), column, len);
+		fireContentChanged(column, row, len, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		if(values.length < height || !extents.contains(column, row, width, height)) {
+			throw new IndexOutOfBoundsException();
+		}
+		for(int r = 0; r < height; ++r) {
+			if(values[r].length < width) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		for(int r = 0; r < height; ++r) {
+			System.arraycopy(values[r], 0, row(row + r), column, width);
+		}
+		fireContentChanged(column, row, width, height);
+	}
+
+	@Override
+	public void getExtents(Rectangle result) {
+		result.setBounds(extents);
+	}
+
+	@Override
+	public boolean contains(int column, int row) {
+		return extents.contains(column, row);
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row.
+	 * New rows are blank and not wrapped.  The buffer can only be scrolled
+	 * forward.
+	 */
+	@Override
+	public void extend(int column, int row) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		final int tail = extents.y + extents.height;
+		if(row < tail) return;
+		final int newY = Math.max(extents.y, row + 1 - capacity);
+		for(int r = Math.max(tail, newY); r <= row; ++r) {
+			values[r % capacity] = blankRow();
+			wrapped[r % capacity] = false;
+		}
+		extents.y = newY;
+		extents.height = row + 1 - newY;
+		fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+	}
+
+	/**
+	 * Changes the number of columns and reflows enough history to fill the
+	 * specified number of rows at the bottom of the buffer.  Observers are
+	 * notified of the new extents and of a change to all the content.
+	 *
+	 * @param columns the new number of columns
+	 * @param visibleRows the number of rows to reflow immediately
+	 * @return true if more history remains to be reflowed by calling
+	 * {@link #reflow(int)}
+	 */
+	public boolean resize(int columns, int visibleRows) {
+		if(columns < 1) throw new IllegalArgumentException();
+		if(columns != extents.width) {
+			final int tail = extents.y + extents.height;
+			if(extents.height > 0) {
+				pending.add(0, new Source(values, wrapped, extents.width, extents.y, tail));
+			}
+			values = new int[capacity][];
+			wrapped = new boolean[capacity];
+			extents.setBounds(0, tail, columns, 0);
+			reflowRows(visibleRows);
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+			if(extents.height > 0) {
+				fireContentChanged(extents.x, extents.y, extents.width, extents.height);
+			}
+		}
+		return isReflowing();
+	}
+
+	/**
+	 * Reflows more history to the current width, adding it to the top of the
+	 * buffer.  Observers are notified of the new extents and the new content.
+	 *
+	 * @param maxRows the approximate number of rows to reflow; a logical
+	 * line is never split between calls
+	 * @return true if more history remains to be reflowed
+	 */
+	public boolean reflow(int maxRows) {
+		if(!pending.isEmpty()) {
+			final int oldY = extents.y;
+			final int oldHeight = extents.height;
+			final int oldRenumbered = renumbered;
+			reflowRows(maxRows);
+			if(renumbered != oldRenumbered) {
+				// every row moved
+				fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+				fireContentChanged(extents.x, extents.y, extents.width, extents.height);
+			}
+			else if(extents.height != oldHeight) {
+				fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+				fireContentChanged(extents.x, extents.y, extents.width, oldY - extents.y);
+			}
+		}
+		return isReflowing();
+	}
+
+	/**
+	 * Reflows logical lines from the pending sources until at least
+	 * <tt>maxRows</tt> rows have been added or the buffer is full.
+	 */
+	private void reflowRows(int maxRows) {
+		final int columns = extents.width;
+		int tail = extents.y + extents.height;
+		// rows above this would collide with newer rows in the ring
+		final int floor = Math.max(0, tail - capacity);
+		int added = 0;
+		while(added < maxRows && !pending.isEmpty()) {
+			final Source source = pending.get(0);
+			if(source.end <= source.start) {
+				pending.remove(0);
+				continue;
+			}
+			// find the first row of the newest logical line
+			int first = source.end - 1;
+			while(first > source.start && source.wrapped[(first - 1) % source.values.length]) {
+				--first;
+			}
+			// gather the line, dropping trailing blanks
+			int[] line = new int[(source.end - first) * source.columns];
+			for(int r = first; r < source.end; ++r) {
+				System.arraycopy(source.values[r % source.values.length], 0, line, (r - first) * source.columns, source.columns);
+			}
+			int len = line.length;
+			while(len > 0 && (line[len - 1] == VgaBufferElement.DEFAULT_VALUE || line[len - 1] == 0)) {
+				--len;
+			}
+			final int lineRows = Math.max(1, (len + columns - 1) / columns);
+			if(extents.y - floor < lineRows && tail < capacity) {
+				// the buffer has room, but not above row 0
+				tail += renumber(lineRows - (extents.y - floor));
+			}
+			// place as many rows of the line as fit, ending just above the top
+			final int fit = Math.min(lineRows, extents.y - floor);
+			if(fit <= 0) {
+				pending.clear();
+				break;
+			}
+			for(int i = lineRows - fit; i < lineRows; ++i) {
+				final int row = extents.y - lineRows + i;
+				final int[] values = blankRow();
+				System.arraycopy(line, i * columns, values, 0, Math.max(0, Math.min(columns, len - i * columns)));
+				this.values[row % capacity] = values;
+				wrapped[row % capacity] = i < lineRows - 1;
+			}
+			extents.y -= fit;
+			extents.height += fit;
+			added += fit;
+			source.end = first;
+		}
+	}
+
+	/**
+	 * Moves every row down to make room above the top of the buffer.  To
+	 * keep the number of moves small, the rows are moved by at least the
+	 * current height of the buffer, but never past its capacity.
+	 *
+	 * @param rows the number of rows needed
+	 * @return the number of rows moved
+	 */
+	private int renumber(int rows) {
+		final int tail = extents.y + extents.height;
+		final int distance = Math.min(Math.max(rows, extents.height), capacity - tail);
+		if(distance <= 0) return 0;
+		final int[][] values = new int[capacity][];
+		final boolean[] wrapped = new boolean[capacity];
+		for(int r = extents.y; r < tail; ++r) {
+			values[(r + distance) % capacity] = this.values[r % capacity];
+			wrapped[(r + distance) % capacity] = this.wrapped[r % capacity];
+		}
+		this.values = values;
+		this.wrapped = wrapped;
+		extents.y += distance;
+		renumbered += distance;
+		return distance;
+	}
+}
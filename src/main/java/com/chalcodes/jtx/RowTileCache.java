@@ -0,0 +1,253 @@
+package com.chalcodes.jtx;
+
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of rendered rows shared by several {@link Display}s showing the
+ * same buffer, such as a main view, a split view of the scrollback, and a
+ * thumbnail.  Each row is rendered once into an image as wide as the buffer,
+ * and every attached display paints by drawing the row images.
+ * <p>
+ * The cache is the only observer of the buffer on behalf of the attached
+ * displays.  It drops the images of rows that change or scroll off, then
+ * passes each event on to the displays, so the buffer notifies one observer
+ * no matter how many displays are attached.  To coalesce the events of a
+ * buffer written in another thread, create the cache with a frame interval,
+ * and it observes the buffer through a {@link CoalescingBufferObserver}.
+ * Either way, the cache and its displays must only be used in the Swing
+ * thread.
+ * <p>
+ * Row images are kept in least-recently-used order up to a fixed number of
+ * rows.  Rows containing blinking cells are rendered again whenever they are
+ * requested in the other blink phase.
+ */
+public class RowTileCache implements BufferObserver {
+	protected final Buffer buffer;
+	protected final SoftFont font;
+	protected final int glyphWidth;
+	protected final int glyphHeight;
+	protected final int maxTiles;
+	protected final List<Display> displays = new ArrayList<Display>();
+	/**
+	 * The observer added to the buffer: this cache, or a
+	 * <tt>CoalescingBufferObserver</tt> wrapping it.
+	 */
+	protected final BufferObserver feed;
+	/** Row images keyed by absolute row number, in access order. */
+	protected final Map<Integer, Tile> tiles;
+	/** The buffer width in columns, or -1 if not known yet. */
+	private int columns = -1;
+	/** Reused when rendering rows. */
+	private final Rectangle snapshotExtents = new Rectangle();
+	private int[] values = new int[0];
+
+	protected static final class Tile {
+		final BufferedImage image;
+		final boolean blinks;
+		final boolean blinkOn;
+
+		Tile(BufferedImage image, boolean blinks, boolean blinkOn) {
+			this.image = image;
+			this.blinks = blinks;
+			this.blinkOn = blinkOn;
+		}
+	}
+
+	/**
+	 * Creates a new <tt>RowTileCache</tt> and adds it to the buffer's
+	 * observers.
+	 *
+	 * @param buffer the buffer whose rows are rendered
+	 * @param font the font to render with
+	 * @param maxTiles the maximum number of row images to keep, which should
+	 * be at least the total number of rows visible in all the displays
+	 */
+	public RowTileCache(Buffer buffer, SoftFont font, int maxTiles) {
+		this(buffer, font, maxTiles, -1);
+	}
+
+	/**
+	 * Creates a new <tt>RowTileCache</tt> that receives the buffer's events
+	 * through a {@link CoalescingBufferObserver}, so the buffer may be
+	 * written in any thread.
+	 *
+	 * @param buffer the buffer whose rows are rendered
+	 * @param font the font to render with
+	 * @param maxTiles the maximum number of row images to keep, which should
+	 * be at least the total number of rows visible in all the displays
+	 * @param interval the frame interval in milliseconds at which events are
+	 * delivered, or -1 to add the cache to the buffer's observers directly
+	 */
+	public RowTileCache(Buffer buffer, SoftFont font, final int maxTiles, int interval) {
+		if(maxTiles < 1 || interval < -1) throw new IllegalArgumentException();
+		this.buffer = buffer;
+		this.font = font;
+		this.maxTiles = maxTiles;
+		glyphWidth = font.getGlyphSize().width;
+		glyphHeight = font.getGlyphSize().height;
+		tiles = new LinkedHashMap<Integer, Tile>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+				return size() > maxTiles;
+			}
+		};
+		feed = interval < 0 ? this : new CoalescingBufferObserver(this, interval);
+		buffer.addBufferObserver(feed);
+	}
+
+	/**
+	 * Attaches a display to this cache.  The display is removed from the
+	 * buffer's observers and receives events from the cache instead, and it
+	 * paints from the cached row images.  The display must show the same
+	 * buffer with a font of the same glyph size.
+	 *
+	 * @param display the display
+	 */
+	public void attach(Display display) {
+		if(display.getBuffer() != buffer) throw new IllegalArgumentException("display shows a different buffer");
+		if(display.glyphWidth != glyphWidth || display.glyphHeight != glyphHeight) {
+			throw new IllegalArgumentException("display has a different glyph size");
+		}
+		buffer.removeBufferObserver(display);
+		displays.add(display);
+		display.tileCache = this;
+	}
+
+	/**
+	 * Detaches a display from this cache, making it observe the buffer
+	 * directly again.
+	 *
+	 * @param display the display
+	 * @return true if the display was attached
+	 */
+	public boolean detach(Display display) {
+		if(!displays.remove(display)) return false;
+		display.tileCache = null;
+		buffer.addBufferObserver(display);
+		return true;
+	}
+
+	/**
+	 * Gets the image of a row, rendering it from the snapshot if it is not
+	 * cached.
+	 *
+	 * @param snapshot a snapshot containing the row
+	 * @param row the row
+	 * @param blinkOn the blink phase
+	 * @param gc the graphics configuration of the destination, or null
+	 * @return the image of the whole row
+	 */
+	public BufferedImage getTile(BufferSnapshot snapshot, int row, boolean blinkOn, GraphicsConfiguration gc) {
+		final Integer key = Integer.valueOf(row);
+		Tile tile = tiles.get(key);
+		if(tile == null || (tile.blinks && tile.blinkOn != blinkOn)) {
+			tile = render(snapshot, row, blinkOn, gc);
+			tiles.put(key, tile);
+		}
+		return tile.image;
+	}
+
+	private Tile render(BufferSnapshot snapshot, int row, boolean blinkOn, GraphicsConfiguration gc) {
+		snapshot.getExtents(snapshotExtents);
+		final int x = snapshotExtents.x;
+		final int columns = snapshotExtents.width;
+		final int width = Math.max(1, columns * glyphWidth);
+		final BufferedImage image = gc == null
+				? new BufferedImage(width, glyphHeight, BufferedImage.TYPE_INT_RGB)
+				: gc.createCompatibleImage(width, glyphHeight, Transparency.OPAQUE);
+		final Graphics g = image.getGraphics();
+		boolean blinks = false;
+		try {
+			if(values.length < columns) {
+				values = new int[columns];
+			}
+			snapshot.getContent(x, row, columns, values);
+			for(int col = 0; col < columns; ++col) {
+				blinks |= VgaBufferElement.isBlinking(values[col]);
+			}
+			// drawn again once if the font lost the resources it draws from
+			font.beginFrame(g);
+			font.drawRun(values, 0, columns, blinkOn, g, 0, 0);
+			if(!font.endFrame()) {
+				font.beginFrame(g);
+				font.drawRun(values, 0, columns, blinkOn, g, 0, 0);
+				font.endFrame();
+			}
+		}
+		finally {
+			g.dispose();
+		}
+		return new Tile(image, blinks, blinkOn);
+	}
+
+	/**
+	 * Gets the number of rows currently cached.
+	 */
+	public int size() {
+		return tiles.size();
+	}
+
+	private void invalidate(int row, int height) {
+		if(height >= tiles.size()) {
+			final Iterator<Integer> it = tiles.keySet().iterator();
+			while(it.hasNext()) {
+				final int key = it.next().intValue();
+				if(key >= row && key < row + height) {
+					it.remove();
+				}
+			}
+		}
+		else {
+			for(int r = row; r < row + height; ++r) {
+				tiles.remove(Integer.valueOf(r));
+			}
+		}
+	}
+
+	@Override
+	public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+		if(width != columns) {
+			// every row must be rendered at the new width
+			tiles.clear();
+			columns = width;
+		}
+		// rows that scrolled off may be reused by other rows
+		final Iterator<Integer> it = tiles.keySet().iterator();
+		while(it.hasNext()) {
+			final int key = it.next().intValue();
+			if(key < y || key >= y + height) {
+				it.remove();
+			}
+		}
+		for(int i = 0; i < displays.size(); ++i) {
+			displays.get(i).extentsChanged(buffer, x, y, width, height);
+		}
+	}
+
+	@Override
+	public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+		invalidate(y, height);
+		for(int i = 0; i < displays.size(); ++i) {
+			displays.get(i).contentChanged(buffer, x, y, width, height);
+		}
+	}
+
+	@Override
+	public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+		invalidate(y, height);
+		for(int i = 0; i < displays.size(); ++i) {
+			displays.get(i).contentScrolled(buffer, x, y, width, height, distance);
+		}
+	}
+}
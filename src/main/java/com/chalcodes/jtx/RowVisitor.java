@@ -0,0 +1,21 @@
+package com.chalcodes.jtx;
+
+/**
+ * Receives the rows of a {@link Buffer} without copying them.
+ *
+ * @see Buffer#visitRows(int, int, RowVisitor)
+ */
+public interface RowVisitor {
+	/**
+	 * Called once for each visited row, in ascending order.  The array may
+	 * be the buffer's own storage, so the visitor must not modify it or keep
+	 * a reference to it after returning.
+	 *
+	 * @param row the absolute row number
+	 * @param values the array containing the row
+	 * @param off the offset in <tt>values</tt> of the first column of the
+	 * buffer extents
+	 * @param len the number of columns
+	 */
+	public abstract void visitRow(int row, int[] values, int off, int len);
+}
@@ -0,0 +1,202 @@
+package com.chalcodes.jtx;
+
+import java.util.Arrays;
+
+/**
+ * Compresses arrays of values encoded with {@link VgaBufferElement}.  The
+ * attribute and character halves of the values are run-length encoded as
+ * two separate streams, because attributes tend to stay the same for long
+ * runs of varying characters, while characters repeat mostly in runs of
+ * blank space.
+ * <p>
+ * The attribute stream is a sequence of run lengths, each followed by the
+ * 16 attribute bits.  The character stream is a sequence of tokens, each
+ * beginning with a header containing a count and a token type.  A run token
+ * is followed by one 16-bit character that is repeated <i>count</i> times.
+ * A literal token is followed by <i>count</i> characters, stored in one byte
+ * each if they all fit, or in two bytes each if they do not.  Counts and
+ * headers are stored as variable-length integers.
+ */
+class RunLengthCodec {
+	private static final int RUN = 0;
+	private static final int LITERAL_8 = 1;
+	private static final int LITERAL_16 = 2;
+	/** The minimum number of repeated characters encoded as a run. */
+	private static final int MIN_RUN = 3;
+
+	/**
+	 * Encodes a range of values.
+	 *
+	 * @param values the values to encode
+	 * @param off the offset of the first value to encode
+	 * @param len the number of values to encode
+	 * @return the encoded bytes
+	 */
+	static byte[] encode(int[] values, int off, int len) {
+		final Sink sink = new Sink(len / 4 + 16);
+		final int end = off + len;
+
+		// attribute runs
+		int i = off;
+		while(i < end) {
+			final int attr = values[i] >>> 16;
+			int j = i + 1;
+			while(j < end && values[j] >>> 16 == attr) ++j;
+			sink.writeVarint(j - i);
+			sink.writeShort(attr);
+			i = j;
+		}
+
+		// character runs and literals
+		i = off;
+		while(i < end) {
+			final int run = runLength(values, i, end);
+			if(run >= MIN_RUN) {
+				sink.writeVarint(run << 2 | RUN);
+				sink.writeShort(values[i]);
+				i += run;
+			}
+			else {
+				// extend the literal until the next run worth encoding
+				int j = i + run;
+				boolean wide = false;
+				for(int k = i; k < j; ++k) {
+					wide |= (values[k] & 0xFFFF) > 0xFF;
+				}
+				while(j < end) {
+					final int next = runLength(values, j, end);
+					if(next >= MIN_RUN) break;
+					for(int k = j; k < j + next; ++k) {
+						wide |= (values[k] & 0xFFFF) > 0xFF;
+					}
+					j += next;
+				}
+				final int count = j - i;
+				if(wide) {
+					sink.writeVarint(count << 2 | LITERAL_16);
+					for(int k = i; k < j; ++k) sink.writeShort(values[k]);
+				}
+				else {
+					sink.writeVarint(count << 2 | LITERAL_8);
+					for(int k = i; k < j; ++k) sink.writeByte(values[k]);
+				}
+				i = j;
+			}
+		}
+		return sink.toByteArray();
+	}
+
+	private static int runLength(int[] values, int start, int end) {
+		final int c = values[start] & 0xFFFF;
+		int i = start + 1;
+		while(i < end && (values[i] & 0xFFFF) == c) ++i;
+		return i - start;
+	}
+
+	/**
+	 * Decodes values previously encoded with
+	 * {@link #encode(int[], int, int)}.
+	 *
+	 * @param bytes the encoded bytes
+	 * @param result the array in which to store the decoded values
+	 * @param off the offset at which to store the first value
+	 * @param len the number of values that were encoded
+	 */
+	static void decode(byte[] bytes, int[] result, int off, int len) {
+		final Source source = new Source(bytes);
+		final int end = off + len;
+
+		int i = off;
+		while(i < end) {
+			final int run = source.readVarint();
+			final int attr = source.readShort() << 16;
+			Arrays.fill(result, i, i + run, attr);
+			i += run;
+		}
+
+		i = off;
+		while(i < end) {
+			final int header = source.readVarint();
+			final int count = header >>> 2;
+			switch(header & 3) {
+			case RUN:
+				final int c = source.readShort();
+				for(int k = i; k < i + count; ++k) result[k] |= c;
+				break;
+			case LITERAL_8:
+				for(int k = i; k < i + count; ++k) result[k] |= source.readByte();
+				break;
+			case LITERAL_16:
+				for(int k = i; k < i + count; ++k) result[k] |= source.readShort();
+				break;
+			default:
+				throw new IllegalArgumentException("corrupt encoding");
+			}
+			i += count;
+		}
+	}
+
+	private static class Sink {
+		private byte[] bytes;
+		private int size;
+
+		Sink(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void writeByte(int b) {
+			if(size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[size++] = (byte) b;
+		}
+
+		void writeShort(int s) {
+			writeByte(s >>> 8);
+			writeByte(s);
+		}
+
+		void writeVarint(int v) {
+			while((v & ~0x7F) != 0) {
+				writeByte(v & 0x7F | 0x80);
+				v >>>= 7;
+			}
+			writeByte(v);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+	}
+
+	private static class Source {
+		private final byte[] bytes;
+		private int position;
+
+		Source(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		int readByte() {
+			return bytes[position++] & 0xFF;
+		}
+
+		int readShort() {
+			return readByte() << 8 | readByte();
+		}
+
+		int readVarint() {
+			int v = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = readByte();
+				v |= (b & 0x7F) << shift;
+				shift += 7;
+			} while((b & 0x80) != 0);
+			return v;
+		}
+	}
+
+	private RunLengthCodec() { }
+}
@@ -0,0 +1,215 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * A fixed-size buffer that behaves like the screen of a full-screen terminal
+ * application.  The extents are always (0, 0, <i>columns</i>, <i>rows</i>).
+ * <p>
+ * Each row of the screen is mapped to a row of storage through an index map.
+ * Scrolling a region with {@link #scroll(int, int, int)} rotates the entries
+ * of the map instead of copying cells, and observers are notified with
+ * {@link BufferObserver#contentScrolled(Buffer, int, int, int, int, int)}
+ * instead of a content change, so they can shift their rendering and draw
+ * only the exposed rows.
+ */
+public class ScreenBuffer extends AbstractBuffer {
+	protected final int columns;
+	protected final int rows;
+	protected final int[] values;
+	/** Maps each screen row to the index of its row in {@link #values}. */
+	protected final int[] map;
+	/** Scratch space for rotating the map. */
+	private final int[] recycled;
+
+	/**
+	 * Creates a new <tt>ScreenBuffer</tt> filled with
+	 * {@link VgaBufferElement#DEFAULT_VALUE}.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the number of rows
+	 */
+	public ScreenBuffer(int columns, int rows) {
+		if(columns < 1 || rows < 1) throw new IllegalArgumentException();
+		this.columns = columns;
+		this.rows = rows;
+		values = new int[columns * rows];
+		Arrays.fill(values, VgaBufferElement.DEFAULT_VALUE);
+		map = new int[rows];
+		for(int r = 0; r < rows; ++r) {
+			map[r] = r;
+		}
+		recycled = new int[rows];
+	}
+
+	private int index(int column, int row) {
+		return map[row] * columns + column;
+	}
+
+	private void checkRows(int row, int height) {
+		if(row < 0 || height < 0 || row + height > rows) {
+			throw new IndexOutOfBoundsException(String.format("row %d, height %d, rows %d", row, height, rows));
+		}
+	}
+
+	private void checkColumns(int column, int width) {
+		if(column < 0 || width < 0 || column + width > columns) {
+			throw new IndexOutOfBoundsException(String.format("col %d, width %d, columns %d", column, width, columns));
+		}
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		checkRows(row, 1);
+		checkColumns(column, 1);
+		return values[index(column, row)];
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		checkRows(row, 1);
+		checkColumns(column, len);
+		System.arraycopy(values, index(column, row), result, 0, len);
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkRows(row, height);
+		checkColumns(column, width);
+		for(int r = 0; r < height; ++r) {
+			System.arraycopy(values, index(column, row + r), result[r], 0, width);
+		}
+	}
+
+	@Override
+	public void visitRows(int row, int height, RowVisitor visitor) {
+		checkRows(row, height);
+		for(int r = row; r < row + height; ++r) {
+			visitor.visitRow(r, values, index(0, r), columns);
+		}
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		checkRows(row, 1);
+		checkColumns(column, 1);
+		values[index(column, row)] = value;
+		fireContentChanged(column, row, 1, 1);
+	}
+
+	/**
+	 * Copies a one-dimensional array of values into a row.  Values that fall
+	 * outside the screen columns are discarded.
+	 */
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || off + len > values.length) throw new IllegalArgumentException();
+		checkRows(row, 1);
+		if(column < 0) {
+			len += column;
+			off -= column;
+			column = 0;
+		}
+		if(column + len > columns) {
+			len -= column + len - columns;
+		}
+		if(len <= 0) return;
+		System.arraycopy(values, off, this.values, index(column, row), len);
+		fireContentChanged(column, row, len, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		if(values.length < height) throw new IndexOutOfBoundsException();
+		checkRows(row, height);
+		checkColumns(column, width);
+		for(int r = 0; r < height; ++r) {
+			if(values[r].length < width) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		for(int r = 0; r < height; ++r) {
+			System.arraycopy(values[r], 0, this.values, index(column, row + r), width);
+		}
+		fireContentChanged(column, row, width, height);
+	}
+
+	/**
+	 * Scrolls the whole screen up and copies the rows into the exposed rows
+	 * at the bottom.  Observers are notified once of the scroll and once of
+	 * the content change.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		if(off < 0 || rowCount < 0 || off + rowCount * columns > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int skip = Math.max(0, rowCount - rows);
+		final int height = rowCount - skip;
+		scroll(0, rows, height);
+		for(int r = 0; r < height; ++r) {
+			System.arraycopy(values, off + (skip + r) * columns, this.values, map[rows - height + r] * columns, columns);
+		}
+		fireContentChanged(0, rows - height, columns, height);
+	}
+
+	/**
+	 * Moves the content of the rows from <tt>top</tt> (inclusive) to
+	 * <tt>bottom</tt> (exclusive).  Rows exposed by the move are filled with
+	 * {@link VgaBufferElement#DEFAULT_VALUE}.  Only the exposed rows are
+	 * written; the other rows are moved by updating the row map.
+	 *
+	 * @param top the first row of the scroll region
+	 * @param bottom one past the last row of the scroll region
+	 * @param distance the number of rows to move the content up, or if
+	 * negative, down
+	 */
+	public void scroll(int top, int bottom, int distance) {
+		checkRows(top, bottom - top);
+		final int height = bottom - top;
+		final int d = Math.min(Math.abs(distance), height);
+		if(d == 0) return;
+		if(distance > 0) {
+			System.arraycopy(map, top, recycled, 0, d);
+			System.arraycopy(map, top + d, map, top, height - d);
+			System.arraycopy(recycled, 0, map, bottom - d, d);
+			clearRows(bottom - d, d);
+		}
+		else {
+			System.arraycopy(map, bottom - d, recycled, 0, d);
+			System.arraycopy(map, top, map, top + d, height - d);
+			System.arraycopy(recycled, 0, map, top, d);
+			clearRows(top, d);
+		}
+		fireContentScrolled(0, top, columns, height, distance > 0 ? d : -d);
+	}
+
+	private void clearRows(int row, int height) {
+		for(int r = row; r < row + height; ++r) {
+			Arrays.fill(values, map[r] * columns, (map[r] + 1) * columns, VgaBufferElement.DEFAULT_VALUE);
+		}
+	}
+
+	/**
+	 * Does nothing if the specified coordinates are on the screen.
+	 *
+	 * @throws IndexOutOfBoundsException if the coordinates are not on the
+	 * screen
+	 */
+	@Override
+	public void extend(int column, int row) {
+		if(!contains(column, row)) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d", column, row));
+		}
+	}
+
+	@Override
+	public void getExtents(Rectangle result) {
+		result.setBounds(0, 0, columns, rows);
+	}
+
+	@Override
+	public boolean contains(int column, int row) {
+		return column >= 0 && column < columns && row >= 0 && row < rows;
+	}
+}
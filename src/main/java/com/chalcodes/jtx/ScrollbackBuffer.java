@@ -1,9 +1,7 @@
 package com.chalcodes.jtx;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * A circular buffer that behaves like a typical terminal scrollback buffer.
@@ -16,13 +14,28 @@ import java.util.List;
  * reaches capacity, the extents height stops changing and the y position
  * begins increasing.  Thus, any given row is addressable using the same row
  * number for as long as it remains in the buffer.
+ * <p>
+ * Each row records the {@linkplain #getVersion() version} of the buffer in
+ * which it last changed, so readers that keep up with the buffer at their
+ * own pace can find the rows that changed since they last looked with
+ * {@link #changedRowsSince(long)}, without tracking events themselves.
  *
  * @author <a href="mailto:kjkrum@gmail.com">Kevin Krumwiede</a>
  */
-public class ScrollbackBuffer implements Buffer {
-	protected final int[][] values;
+public class ScrollbackBuffer extends AbstractBuffer {
+	/**
+	 * The content, stored as a single ring of rows.  Row <i>n</i> begins at
+	 * index <tt>(n % rows) * columns</tt>.
+	 */
+	protected final int[] values;
+	protected final int columns;
+	protected final int rows;
 	protected final Rectangle extents;
-	protected final List<BufferObserver> observers = new ArrayList<BufferObserver>();
+	/**
+	 * The version in which each row last changed, indexed like the rows of
+	 * {@link #values}.
+	 */
+	protected final long[] generations;
 	
 	/**
 	 * Creates a new <tt>ScrollbackBuffer</tt>.  The number of columns is
@@ -33,51 +46,140 @@ public class ScrollbackBuffer implements Buffer {
 	 * @param rows
 	 */
 	public ScrollbackBuffer(int columns, int rows) {
-		values = new int[rows][columns];
+		values = new int[rows * columns];
+		this.columns = columns;
+		this.rows = rows;
 		extents = new Rectangle(0, 0, columns, 0);
+		generations = new long[rows];
 		// extents.y is the head...
 	}
 	
-	@Override
-	public int getContent(int column, int row) {
-		if(row < extents.y || row > extents.y + extents.height) {
+	/**
+	 * Gets the index in {@link #values} of the specified cell.
+	 */
+	protected int index(int column, int row) {
+		return row % rows * columns + column;
+	}
+	
+	private void checkRows(int column, int row, int height) {
+		if(row < extents.y || row + height > extents.y + extents.height || height < 0) {
 			throw new IndexOutOfBoundsException(String.format("col %d, row %d, extents.y %d", column, row, extents.y));
 		}
-		return values[row % values.length][column];
 	}
-
+	
+	private void checkColumns(int column, int width) {
+		if(column < 0 || width < 0 || column + width > columns) {
+			throw new IndexOutOfBoundsException(String.format("col %d, width %d, columns %d", column, width, columns));
+		}
+	}
+	
 	@Override
-	public void getContent(int column, int row, int len, int[] result) {
-		if(row < extents.y || row > extents.y + extents.height) throw new IndexOutOfBoundsException();
-		System.arraycopy(values[row % values.length], column, result, 0, len);
+	public int getContent(int column, int row) {
+		checkRows(column, row, 1);
+		checkColumns(column, 1);
+		return values[index(column, row)];
 	}
 
 	@Override
-	public int[] getContent(int column, int row, int len) {
-		int[] result = new int[len];
-		getContent(column, row, len, result);
-		return result;
+	public void getContent(int column, int row, int len, int[] result) {
+		checkRows(column, row, 1);
+		checkColumns(column, len);
+		System.arraycopy(values, index(column, row), result, 0, len);
 	}
 
 	@Override
 	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkRows(column, row, height);
+		checkColumns(column, width);
 		for(int r = 0; r < height; ++r) {
-			System.arraycopy(this.values[row + r], column, result[r], 0, width);
+			System.arraycopy(values, index(column, row + r), result[r], 0, width);
 		}
 	}
 
 	@Override
-	public int[][] getContent(int column, int row, int width, int height) {
-		int[][] result = new int[height][width];
-		getContent(column, row, width, height, result);
-		return result;
+	public void visitRows(int row, int height, RowVisitor visitor) {
+		checkRows(0, row, height);
+		for(int r = row; r < row + height; ++r) {
+			visitor.visitRow(r, values, index(0, r), columns);
+		}
+	}
+	
+	/**
+	 * Copies whole rows into a one-dimensional array.  The copy requires at
+	 * most two calls to <tt>System.arraycopy(...)</tt>, one on each side of
+	 * the point where the ring wraps.
+	 * 
+	 * @param row the first row to copy
+	 * @param height the number of rows to copy
+	 * @param result the array in which to store the rows
+	 * @param off the offset in <tt>result</tt> of the first row
+	 */
+	public void getRows(int row, int height, int[] result, int off) {
+		checkRows(0, row, height);
+		final int slot = row % rows;
+		final int first = Math.min(height, rows - slot);
+		System.arraycopy(values, slot * columns, result, off, first * columns);
+		if(first < height) {
+			System.arraycopy(values, 0, result, off + first * columns, (height - first) * columns);
+		}
+	}
+
+	/**
+	 * Gets the version in which the specified row last changed.
+	 * 
+	 * @param row the row
+	 * @return the version
+	 */
+	public long getGeneration(int row) {
+		checkRows(0, row, 1);
+		return generations[row % rows];
+	}
+	
+	/**
+	 * Finds the rows that changed after the specified version.  Rows that
+	 * were added to the buffer after that version are included.
+	 * 
+	 * @param generation a version previously returned by
+	 * {@link #getVersion()}
+	 * @return the absolute row numbers of the changed rows, in ascending
+	 * order
+	 */
+	public int[] changedRowsSince(long generation) {
+		int count = 0;
+		final int[] result = new int[extents.height];
+		for(int row = extents.y; row < extents.y + extents.height; ++row) {
+			if(generations[row % rows] > generation) {
+				result[count++] = row;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+	
+	/**
+	 * Records that rows are changing in the next version.
+	 */
+	private void stamp(int row, int height) {
+		for(int r = row; r < row + height; ++r) {
+			generations[r % rows] = version + 1;
+		}
+	}
+	
+	/**
+	 * Records the changed rows before notifying observers, so observers can
+	 * already find them with {@link #changedRowsSince(long)}.
+	 */
+	@Override
+	protected void fireContentChanged(int column, int row, int width, int height) {
+		stamp(row, height);
+		super.fireContentChanged(column, row, width, height);
 	}
 
 	@Override
 	public void setContent(int column, int row, int value) {
 		if(row < extents.y) throw new IndexOutOfBoundsException();
+		checkColumns(column, 1);
 		extend(0, row);
-		values[row % values.length][column] = value;
+		values[index(column, row)] = value;
 		fireContentChanged(column, row, 1, 1);	
 		
 	}
@@ -91,11 +193,11 @@ public class ScrollbackBuffer implements Buffer {
 			off -= column;
 			column = 0;
 		}
-		if(column + len > this.values[0].length) {
-			len -= column + len - this.values[0].length;
+		if(column + len > columns) {
+			len -= column + len - columns;
 		}
 		if(len <= 0) return;
-		System.arraycopy(values, off, this.values[row % this.values.length], column, len);
+		System.arraycopy(values, off, this.values, index(column, row), len);
 		fireContentChanged(column, row, len, 1);
 	}
 
@@ -110,14 +212,40 @@ public class ScrollbackBuffer implements Buffer {
 			}
 		}
 		for(int r = 0; r < height; ++r) {
-			System.arraycopy(values[r], 0, this.values[row + r], column, width);
+			System.arraycopy(values[r], 0, this.values, index(column, row + r), width);
 		}
 		fireContentChanged(column, row, width, height);
 	}
+	
+	/**
+	 * Copies whole rows from a one-dimensional array.  The rows must already
+	 * be within the buffer extents.  The copy requires at most two calls to
+	 * <tt>System.arraycopy(...)</tt>, one on each side of the point where the
+	 * ring wraps.  Buffer observers are notified only once of the content
+	 * change.
+	 * 
+	 * @param row the first row to copy into
+	 * @param height the number of rows to copy
+	 * @param values the rows to copy
+	 * @param off the offset in <tt>values</tt> of the first row
+	 */
+	public void setRows(int row, int height, int[] values, int off) {
+		if(off < 0 || height < 0 || off + height * columns > values.length) throw new IllegalArgumentException();
+		checkRows(0, row, height);
+		final int slot = row % rows;
+		final int first = Math.min(height, rows - slot);
+		System.arraycopy(values, off, this.values, slot * columns, first * columns);
+		if(first < height) {
+			System.arraycopy(values, off + first * columns, this.values, 0, (height - first) * columns);
+		}
+		if(height > 0) {
+			fireContentChanged(0, row, columns, height);
+		}
+	}
 
 	@Override
-	public Rectangle getExtents() {
-		return new Rectangle(extents);
+	public void getExtents(Rectangle result) {
+		result.setBounds(extents);
 	}
 
 	@Override
@@ -125,24 +253,6 @@ public class ScrollbackBuffer implements Buffer {
 		return extents.contains(column, row);
 	}
 
-	/**
-	 * Adds the specified observer to the end of the observer list.
-	 */
-	@Override
-	public void addBufferObserver(BufferObserver observer) {
-		if(observer == null) throw new NullPointerException();		
-		observers.add(observer);
-	}
-
-	/**
-	 * Removes the first occurrence of the specified observer from the
-	 * observer list.
-	 */
-	@Override
-	public boolean removeBufferObserver(BufferObserver observer) {
-		return observers.remove(observer);
-	}
-	
 	/**
 	 * Scrolls the buffer extents, if necessary, to include the specified row.
 	 * Rows added to the bottom of the buffer are filled with a value
@@ -154,40 +264,67 @@ public class ScrollbackBuffer implements Buffer {
 	 */
 	@Override
 	public void extend(int column, int row) {
+		if(grow(row)) {
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		}
+	}
+	
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row,
+	 * without notifying observers.
+	 * 
+	 * @return true if the extents changed; otherwise false
+	 */
+	protected boolean grow(int row) {
 		if(row < extents.y) throw new IndexOutOfBoundsException();
 		int tail = extents.y + extents.height;		
-		if(row < tail) return;
+		if(row < tail) return false;
 		int newRows = row + 1 - tail; // +1 because row is inclusive, tail is exclusive
 		
-		if(tail >= values.length) { // buffer is full and scrolling
-			int clear = Math.min(newRows, values.length);
-			for(int i = tail; i < tail + clear; ++i) {
-				Arrays.fill(values[i % values.length], VgaBufferElement.DEFAULT_VALUE);				
+		if(tail >= rows) { // buffer is full and scrolling
+			int clear = Math.min(newRows, rows);
+			int slot = tail % rows;
+			int first = Math.min(clear, rows - slot);
+			Arrays.fill(values, slot * columns, (slot + first) * columns, VgaBufferElement.DEFAULT_VALUE);
+			if(first < clear) {
+				Arrays.fill(values, 0, (clear - first) * columns, VgaBufferElement.DEFAULT_VALUE);
 			}
+			stamp(row + 1 - clear, clear);
 			extents.y += newRows;
-			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
 		}
-		else if(row < values.length) { // buffer is not full, and this will not make it scroll
+		else if(row < rows) { // buffer is not full, and this will not make it scroll
+			stamp(tail, newRows);
 			extents.height += newRows;
-			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
 		}
 		else {
 			// split into two recursive calls that match the above conditions
-			extend(0, values.length - 1);
-			extend(0, row);
+			grow(rows - 1);
+			grow(row);
 		}
+		return true;
 	}
-
-	void fireContentChanged(int column, int row, int width, int height) {
-		for(BufferObserver observer : observers) {
-			observer.contentChanged(this, column, row, width, height);
-		}
-	}	
 	
-	void fireExtentsChanged(int column, int row, int width, int height) {
-		for(BufferObserver observer : observers) {
-			observer.extentsChanged(this, column, row, width, height);
+	/**
+	 * Appends rows with a single move of the ring head and at most two calls
+	 * to <tt>System.arraycopy(...)</tt>.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		if(off < 0 || rowCount < 0 || off + rowCount * columns > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int row = extents.y + extents.height;
+		grow(row + rowCount - 1);
+		fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		// skip any rows that have already scrolled off the top
+		final int skip = Math.max(0, extents.y - row);
+		final int first = row + skip;
+		final int height = rowCount - skip;
+		final int slot = first % rows;
+		final int split = Math.min(height, rows - slot);
+		System.arraycopy(values, off + skip * columns, this.values, slot * columns, split * columns);
+		if(split < height) {
+			System.arraycopy(values, off + (skip + split) * columns, this.values, 0, (height - split) * columns);
 		}
-	}	
-
+		fireContentChanged(0, first, columns, height);
+	}
 }
@@ -0,0 +1,228 @@
+package com.chalcodes.jtx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent storage for rows of a {@link PersistentScrollbackBuffer}.  Rows
+ * are compressed with {@link RunLengthCodec} and appended to segment files
+ * that are never modified once written.  An index file maps each absolute
+ * row number to the location of the most recent copy of the row.  The index
+ * is memory-mapped, so reopening a store with millions of rows costs almost
+ * nothing until the rows are actually read.
+ * <p>
+ * Segment files are never deleted by the store, so the disk space used by a
+ * store grows for as long as rows are written to it.
+ */
+public class SegmentStore implements Closeable {
+	/** The size beyond which a new segment file is started. */
+	protected static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+	/** The number of index entries in each mapped chunk of the index. */
+	protected static final int INDEX_CHUNK_ROWS = 1 << 20;
+	private static final int MAGIC = 0x4A545849; // "JTXI"
+	private static final int HEADER_SIZE = 16;
+
+	protected final File directory;
+	protected final int columns;
+	protected final RandomAccessFile indexFile;
+	protected final List<MappedByteBuffer> indexChunks = new ArrayList<MappedByteBuffer>();
+	/** Open segment files, keyed by segment number. */
+	protected final Map<Integer, RandomAccessFile> segments = new HashMap<Integer, RandomAccessFile>();
+	/** One more than the highest row number ever written. */
+	protected int rowCount;
+	/** The segment currently being appended to. */
+	protected int segment;
+	/** The length of the segment currently being appended to. */
+	protected long segmentLength;
+	private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+	/**
+	 * Opens a store in the specified directory, creating the directory and
+	 * the store if they do not exist.
+	 *
+	 * @param directory the directory containing the store
+	 * @param columns the number of values in each row
+	 * @throws IOException if the store cannot be opened, or if it exists and
+	 * has a different number of columns
+	 */
+	public SegmentStore(File directory, int columns) throws IOException {
+		if(columns < 1) throw new IllegalArgumentException();
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create " + directory);
+		}
+		this.directory = directory;
+		this.columns = columns;
+		indexFile = new RandomAccessFile(new File(directory, "index"), "rw");
+		try {
+			if(indexFile.length() < HEADER_SIZE) {
+				indexFile.setLength(0);
+				indexFile.writeInt(MAGIC);
+				indexFile.writeInt(columns);
+				indexFile.writeInt(0);
+				indexFile.writeInt(0);
+			}
+			else {
+				indexFile.seek(0);
+				if(indexFile.readInt() != MAGIC) {
+					throw new IOException("not a scrollback store: " + directory);
+				}
+				if(indexFile.readInt() != columns) {
+					throw new IOException("scrollback store has a different number of columns");
+				}
+				rowCount = indexFile.readInt();
+			}
+			// continue appending to the last segment
+			while(segmentFile(segment + 1).exists()) {
+				++segment;
+			}
+			segmentLength = segmentFile(segment).length();
+		}
+		catch(IOException e) {
+			indexFile.close();
+			throw e;
+		}
+	}
+
+	private File segmentFile(int segment) {
+		return new File(directory, String.format("%08d.seg", segment));
+	}
+
+	private RandomAccessFile openSegment(int segment) throws IOException {
+		RandomAccessFile file = segments.get(segment);
+		if(file == null) {
+			file = new RandomAccessFile(segmentFile(segment), "rw");
+			segments.put(segment, file);
+		}
+		return file;
+	}
+
+	private MappedByteBuffer indexChunk(int row) throws IOException {
+		final int chunk = row / INDEX_CHUNK_ROWS;
+		while(indexChunks.size() <= chunk) {
+			final long position = HEADER_SIZE + (long) indexChunks.size() * INDEX_CHUNK_ROWS * 8;
+			indexChunks.add(indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, position, INDEX_CHUNK_ROWS * 8L));
+		}
+		return indexChunks.get(chunk);
+	}
+
+	/**
+	 * Gets the number of values in each row.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Gets one more than the highest row number ever written to this store.
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Writes a row.  If the row was written before, the new copy replaces the
+	 * old one.
+	 *
+	 * @param row the absolute row number
+	 * @param values the array containing the row
+	 * @param off the offset of the row in <tt>values</tt>
+	 * @throws IOException if the row cannot be written
+	 */
+	public void write(int row, int[] values, int off) throws IOException {
+		if(row < 0) throw new IndexOutOfBoundsException();
+		final byte[] bytes = RunLengthCodec.encode(values, off, columns);
+		if(segmentLength > 0 && segmentLength + 4 + bytes.length > SEGMENT_SIZE) {
+			++segment;
+			segmentLength = 0;
+		}
+		final ByteBuffer record = ByteBuffer.allocate(4 + bytes.length);
+		record.putInt(bytes.length).put(bytes).flip();
+		final FileChannel channel = openSegment(segment).getChannel();
+		long position = segmentLength;
+		while(record.hasRemaining()) {
+			position += channel.write(record, position);
+		}
+		// store address + 1 so that zero means "not written"
+		indexChunk(row).putLong(row % INDEX_CHUNK_ROWS * 8, segment * SEGMENT_SIZE + segmentLength + 1);
+		segmentLength = position;
+		rowCount = Math.max(rowCount, row + 1);
+	}
+
+	/**
+	 * Reads a row.
+	 *
+	 * @param row the absolute row number
+	 * @param result the array in which to store the row
+	 * @param off the offset at which to store the row in <tt>result</tt>
+	 * @return true if the row was read; false if the row was never written
+	 * @throws IOException if the row cannot be read
+	 */
+	public boolean read(int row, int[] result, int off) throws IOException {
+		if(row < 0 || row >= rowCount) return false;
+		final long address = indexChunk(row).getLong(row % INDEX_CHUNK_ROWS * 8) - 1;
+		if(address < 0) return false;
+		final FileChannel channel = openSegment((int) (address / SEGMENT_SIZE)).getChannel();
+		final long position = address % SEGMENT_SIZE;
+		final int length = readFully(channel, position, 4).getInt();
+		final ByteBuffer bytes = readFully(channel, position + 4, length);
+		RunLengthCodec.decode(bytes.array(), result, off, columns);
+		return true;
+	}
+
+	private ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		if(scratch.capacity() < length) {
+			scratch = ByteBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+		}
+		scratch.clear().limit(length);
+		while(scratch.hasRemaining()) {
+			if(channel.read(scratch, position + scratch.position()) < 0) {
+				throw new IOException("unexpected end of segment");
+			}
+		}
+		scratch.flip();
+		return scratch;
+	}
+
+	/**
+	 * Forces all written rows and the index to disk.
+	 *
+	 * @throws IOException if the store cannot be flushed
+	 */
+	public void flush() throws IOException {
+		for(RandomAccessFile file : segments.values()) {
+			file.getChannel().force(false);
+		}
+		for(MappedByteBuffer chunk : indexChunks) {
+			chunk.force();
+		}
+		indexFile.seek(8);
+		indexFile.writeInt(rowCount);
+		indexFile.getChannel().force(true);
+	}
+
+	/**
+	 * Flushes and closes the store.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			for(RandomAccessFile file : segments.values()) {
+				file.close();
+			}
+			segments.clear();
+			indexFile.close();
+		}
+	}
+}
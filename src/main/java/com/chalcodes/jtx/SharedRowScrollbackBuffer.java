@@ -0,0 +1,347 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A scrollback buffer that stores identical rows only once.  The ring
+ * semantics and absolute row numbering are the same as those of
+ * {@link ScrollbackBuffer}, except that all rows added to the buffer are
+ * filled with {@link VgaBufferElement#DEFAULT_VALUE}.
+ * <p>
+ * Each row is either private to its position in the buffer, or shared and
+ * immutable.  All blank rows share a single instance.  When a row moves more
+ * than <i>liveRows</i> rows above the bottom of the buffer, it is hashed and
+ * looked up in a pool of shared rows; if an identical row is found, the
+ * buffer switches to the shared instance and the private copy becomes
+ * garbage.  Writing to a shared row first replaces it with a private copy,
+ * which remains private until it scrolls off the top of the buffer.  This
+ * greatly reduces the memory used by sessions with many blank or
+ * repeated lines.
+ * <p>
+ * Snapshots share rows with the buffer instead of copying them.  Taking a
+ * snapshot freezes the rows it contains, and writing to a frozen row first
+ * replaces it with a private copy, exactly as for a shared row.
+ */
+public class SharedRowScrollbackBuffer extends AbstractBuffer {
+	protected final int columns;
+	protected final Row[] rows;
+	protected final int liveRows;
+	protected final Rectangle extents;
+	/** Shared rows, keyed by themselves so equal rows can be found. */
+	protected final Map<Row, Row> pool = new HashMap<Row, Row>();
+	protected final Row blank;
+
+	/**
+	 * A row of values.  Once a row is shared or frozen, its values never
+	 * change.
+	 */
+	protected static final class Row {
+		final int[] values;
+		boolean shared;
+		/** True if the values are referenced by a snapshot. */
+		boolean frozen;
+		/** The number of positions in the buffer using this row. */
+		int refs;
+		int hash;
+
+		Row(int[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Row && Arrays.equals(values, ((Row) obj).values);
+		}
+	}
+
+	/**
+	 * Creates a new <tt>SharedRowScrollbackBuffer</tt> that shares every row
+	 * except the last.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 */
+	public SharedRowScrollbackBuffer(int columns, int rows) {
+		this(columns, rows, 1);
+	}
+
+	/**
+	 * Creates a new <tt>SharedRowScrollbackBuffer</tt>.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 * @param liveRows the number of rows at the bottom of the buffer that are
+	 * expected to change often, and are therefore not shared
+	 */
+	public SharedRowScrollbackBuffer(int columns, int rows, int liveRows) {
+		if(columns < 1 || rows < 1 || liveRows < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.columns = columns;
+		this.rows = new Row[rows];
+		this.liveRows = liveRows;
+		extents = new Rectangle(0, 0, columns, 0);
+		final int[] values = new int[columns];
+		Arrays.fill(values, VgaBufferElement.DEFAULT_VALUE);
+		blank = share(new Row(values));
+		++blank.refs; // the blank row never leaves the pool
+	}
+
+	/**
+	 * Returns the pooled row equal to the specified row, adding the row to
+	 * the pool if there is no such row.  The reference count of the returned
+	 * row is not changed.
+	 */
+	protected Row share(Row row) {
+		if(row.shared) return row;
+		row.hash = Arrays.hashCode(row.values);
+		final Row pooled = pool.get(row);
+		if(pooled != null) return pooled;
+		row.shared = true;
+		pool.put(row, row);
+		return row;
+	}
+
+	/**
+	 * Replaces the row in the specified slot, updating reference counts.
+	 */
+	private void replace(int slot, Row row) {
+		final Row old = rows[slot];
+		if(old == row) return;
+		if(old != null && --old.refs == 0 && old.shared) {
+			pool.remove(old);
+		}
+		++row.refs;
+		rows[slot] = row;
+	}
+
+	/**
+	 * Gets the values of the specified row for reading.  The returned array
+	 * must not be modified.
+	 */
+	protected int[] readable(int row) {
+		return rows[row % rows.length].values;
+	}
+
+	/**
+	 * Gets the values of the specified row for writing, replacing a shared
+	 * or frozen row with a private copy.
+	 */
+	protected int[] writable(int row) {
+		final int slot = row % rows.length;
+		final Row current = rows[slot];
+		if(current.shared || current.frozen) {
+			replace(slot, new Row(current.values.clone()));
+		}
+		return rows[slot].values;
+	}
+
+	private void checkRow(int column, int row) {
+		if(row < extents.y || row >= extents.y + extents.height) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, extents.y %d", column, row, extents.y));
+		}
+	}
+
+	private void checkColumns(int column, int len) {
+		if(column < 0 || len < 0 || column + len > columns) {
+			throw new IndexOutOfBoundsException(String.format("col %d, len %d, columns %d", column, len, columns));
+		}
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		checkRow(column, row);
+		checkColumns(column, 1);
+		return readable(row)[column];
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		checkRow(column, row);
+		checkColumns(column, len);
+		System.arraycopy(readable(row), column, result, 0, len);
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkColumns(column, width);
+		for(int r = 0; r < height; ++r) {
+			checkRow(column, row + r);
+			System.arraycopy(readable(row + r), column, result[r], 0, width);
+		}
+	}
+
+	@Override
+	public void visitRows(int row, int height, RowVisitor visitor) {
+		for(int r = row; r < row + height; ++r) {
+			checkRow(0, r);
+			visitor.visitRow(r, readable(r), 0, columns);
+		}
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		checkColumns(column, 1);
+		extend(0, row);
+		writable(row)[column] = value;
+		fireContentChanged(column, row, 1, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || off + len > values.length) throw new IllegalArgumentException();
+		extend(0, row);
+		if(column < 0) {
+			len += column;
+			off -= column;
+			column = 0;
+		}
+		if(column + len > columns) {
+			len -= column + len - columns;
+		}
+		if(len <= 0) return;
+		System.arraycopy(values, off, writable(row), column, len);
+		fireContentChanged(column, row, len, 1);
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		if(values.length < height || !extents.contains(column, row, width, height)) {
+			throw new IndexOutOfBoundsException();
+		}
+		for(int r = 0; r < height; ++r) {
+			if(values[r].length < width) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		for(int r = 0; r < height; ++r) {
+			System.arraycopy(values[r], 0, writable(row + r), column, width);
+		}
+		fireContentChanged(column, row, width, height);
+	}
+
+	@Override
+	public void getExtents(Rectangle result) {
+		result.setBounds(extents);
+	}
+
+	@Override
+	public boolean contains(int column, int row) {
+		return extents.contains(column, row);
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row.
+	 * Behaves like {@link ScrollbackBuffer#extend(int, int)}, except that new
+	 * rows are always blank, and rows leaving the live region at the bottom
+	 * of the buffer are shared.
+	 */
+	@Override
+	public void extend(int column, int row) {
+		if(grow(row)) {
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		}
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row,
+	 * without notifying observers.
+	 *
+	 * @return true if the extents changed; otherwise false
+	 */
+	protected boolean grow(int row) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		final int tail = extents.y + extents.height;
+		if(row < tail) return false;
+		final int newRows = row + 1 - tail; // +1 because row is inclusive, tail is exclusive
+
+		if(tail >= rows.length) { // buffer is full and scrolling
+			extents.y += newRows;
+		}
+		else if(row < rows.length) { // buffer is not full, and this will not make it scroll
+			extents.height += newRows;
+		}
+		else {
+			// split into two recursive calls that match the above conditions
+			grow(rows.length - 1);
+			grow(row);
+			return true;
+		}
+		// share the rows that are no longer live
+		final int newTail = row + 1;
+		for(int r = Math.max(tail - liveRows, extents.y); r < Math.min(tail, newTail - liveRows); ++r) {
+			final int slot = r % rows.length;
+			replace(slot, share(rows[slot]));
+		}
+		// blank the new rows, releasing any rows they replace
+		for(int r = Math.max(tail, extents.y); r < newTail; ++r) {
+			replace(r % rows.length, blank);
+		}
+		return true;
+	}
+
+	/**
+	 * Appends rows with a single change of the extents.  Each appended row
+	 * gets a private copy of its values, and the appended rows that are
+	 * already outside the live region are shared at once.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		if(off < 0 || rowCount < 0 || off + rowCount * columns > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int row = extents.y + extents.height;
+		grow(row + rowCount - 1);
+		fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		// skip any rows that have already scrolled off the top
+		final int skip = Math.max(0, extents.y - row);
+		final int first = row + skip;
+		final int height = rowCount - skip;
+		final int live = extents.y + extents.height - liveRows;
+		for(int r = 0; r < height; ++r) {
+			final int from = off + (skip + r) * columns;
+			final Row appended = new Row(Arrays.copyOfRange(values, from, from + columns));
+			replace((first + r) % rows.length, first + r < live ? share(appended) : appended);
+		}
+		fireContentChanged(0, first, columns, height);
+	}
+
+	/**
+	 * Takes a snapshot that shares rows with this buffer.  Only the array of
+	 * row references is allocated.
+	 */
+	@Override
+	public BufferSnapshot snapshot(int row, int height) {
+		final int first = Math.max(row, extents.y);
+		final int last = Math.min(row + height, extents.y + extents.height);
+		final int[][] values = new int[Math.max(0, last - first)][];
+		for(int r = 0; r < values.length; ++r) {
+			final Row current = rows[(first + r) % rows.length];
+			current.frozen = true;
+			values[r] = current.values;
+		}
+		return new BufferSnapshot(version, extents, first, values);
+	}
+
+	/**
+	 * Gets the number of distinct rows currently stored in this buffer,
+	 * including the shared blank row.
+	 */
+	public int getDistinctRowCount() {
+		int count = pool.size();
+		for(int r = extents.y; r < extents.y + extents.height; ++r) {
+			if(!rows[r % rows.length].shared) ++count;
+		}
+		return count;
+	}
+}
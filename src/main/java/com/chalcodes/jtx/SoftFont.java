@@ -27,5 +27,39 @@ public interface SoftFont {
 	 */
 	public abstract void drawGlyph(int value, boolean blinkOn, Graphics graphics, int x, int y);
 	
+	/**
+	 * Draws a run of glyphs from left to right, such as the changed cells of
+	 * a row.  Implementations should draw runs of blank cells more cheaply
+	 * than one glyph at a time.
+	 * 
+	 * @param values the packed characters and attributes
+	 * @param off the offset in <tt>values</tt> of the first glyph
+	 * @param len the number of glyphs
+	 * @param blinkOn whether characters with the blink attribute should be rendered on or off
+	 * @param graphics the graphics context to render into
+	 * @param x the x coordinate of the first glyph
+	 * @param y
+	 * @see AbstractSoftFont
+	 */
+	public abstract void drawRun(int[] values, int off, int len, boolean blinkOn, Graphics graphics, int x, int y);
+	
+	/**
+	 * Begins drawing a frame into a graphics context.  Until
+	 * {@link #endFrame()} is called, the font may skip work it would
+	 * otherwise repeat for every glyph drawn into the same context.
+	 * 
+	 * @param graphics the graphics context the frame is drawn into
+	 */
+	public abstract void beginFrame(Graphics graphics);
+	
+	/**
+	 * Ends the frame begun by {@link #beginFrame(Graphics)}.  If the font
+	 * lost resources it was drawing from during the frame, the glyphs may
+	 * have been drawn incorrectly and the whole frame should be drawn again.
+	 * 
+	 * @return true if the frame was drawn correctly
+	 */
+	public abstract boolean endFrame();
+	
 	// applications can draw underlines and inverted colors by manipulating attributes
 }
\ No newline at end of file
@@ -0,0 +1,565 @@
+package com.chalcodes.jtx;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A scrollback buffer that can be read and written by any number of threads
+ * at once.  The ring semantics and absolute row numbering are the same as
+ * those of {@link ScrollbackBuffer}, except that all rows added to the
+ * buffer are filled with {@link VgaBufferElement#DEFAULT_VALUE}.
+ * <p>
+ * Rows are divided into bands of consecutive rows, and each band is guarded
+ * by one of a fixed number of stripe locks.  Reading or writing a row holds
+ * the read lock of a global read-write lock and the stripe lock of the row's
+ * band, so threads writing rows in different bands, like the separate panes
+ * of a dashboard, do not wait for each other.  Changing the extents holds
+ * the global write lock.  Since appending rows always changes the extents,
+ * {@link #appendRows(int[], int, int)} is serialized with all other
+ * operations.
+ * <p>
+ * Operations on several rows are atomic for each row, but not for the whole
+ * region.  Extents events are delivered while the global read lock is held,
+ * so the extents cannot change while one is being delivered.  Content
+ * changes are recorded as damage of the stripe that guards the row, and are
+ * delivered after the writer has released all its locks by whichever writer
+ * finds no other delivery in progress, so a content event may arrive after
+ * its rows have scrolled off.  Each stripe's damage is delivered as one
+ * event.  Events may be delivered in any thread.  Delivery of events is
+ * serialized, so an observer never receives two events at once, but
+ * observers such as {@link Display} that must be called in the Swing thread
+ * should be wrapped in a {@link CoalescingBufferObserver}.  Observers must
+ * not write to the buffer.
+ * <p>
+ * An update transaction holds the global write lock from
+ * {@link #beginUpdate()} until the matching {@link #endUpdate()}, so a
+ * transaction excludes all other threads and must end in the thread that
+ * began it.
+ */
+public class StripedScrollbackBuffer extends AbstractBuffer {
+	/** The default number of rows in each band. */
+	public static final int DEFAULT_BAND_ROWS = 4;
+	/** The default number of stripe locks. */
+	public static final int DEFAULT_STRIPES = 16;
+
+	protected final int[] values;
+	protected final int columns;
+	protected final int rows;
+	protected final Rectangle extents;
+	protected final int bandRows;
+	protected final Lock[] stripes;
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** The content damage of each stripe, guarded by its stripe lock. */
+	private final Damage[] damage;
+	/** Counts versions, since writers do not hold a common lock. */
+	private final AtomicLong versions = new AtomicLong();
+	/** Set while a thread is delivering damage to observers. */
+	private final AtomicBoolean delivering = new AtomicBoolean();
+
+	/**
+	 * Creates a new <tt>StripedScrollbackBuffer</tt> with the default band
+	 * size and number of stripes.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 */
+	public StripedScrollbackBuffer(int columns, int rows) {
+		this(columns, rows, DEFAULT_BAND_ROWS, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Creates a new <tt>StripedScrollbackBuffer</tt>.
+	 *
+	 * @param columns the number of columns
+	 * @param rows the maximum number of rows before the content begins
+	 * scrolling
+	 * @param bandRows the number of consecutive rows guarded by the same
+	 * stripe lock
+	 * @param stripes the number of stripe locks
+	 */
+	public StripedScrollbackBuffer(int columns, int rows, int bandRows, int stripes) {
+		if(columns < 1 || rows < 1 || bandRows < 1 || stripes < 1) throw new IllegalArgumentException();
+		this.columns = columns;
+		this.rows = rows;
+		this.bandRows = bandRows;
+		values = new int[columns * rows];
+		Arrays.fill(values, VgaBufferElement.DEFAULT_VALUE);
+		extents = new Rectangle(0, 0, columns, 0);
+		this.stripes = new Lock[stripes];
+		damage = new Damage[stripes];
+		for(int i = 0; i < stripes; ++i) {
+			this.stripes[i] = new ReentrantLock();
+			damage[i] = new Damage();
+		}
+	}
+
+	/**
+	 * Gets the stripe lock guarding the specified row.
+	 */
+	protected Lock stripe(int row) {
+		return stripes[row / bandRows % stripes.length];
+	}
+
+	private Damage damage(int row) {
+		return damage[row / bandRows % stripes.length];
+	}
+
+	private int index(int column, int row) {
+		return row % rows * columns + column;
+	}
+
+	private void checkRows(int column, int row, int height) {
+		if(row < extents.y || row + height > extents.y + extents.height || height < 0) {
+			throw new IndexOutOfBoundsException(String.format("col %d, row %d, extents.y %d", column, row, extents.y));
+		}
+	}
+
+	private void checkColumns(int column, int width) {
+		if(column < 0 || width < 0 || column + width > columns) {
+			throw new IndexOutOfBoundsException(String.format("col %d, width %d, columns %d", column, width, columns));
+		}
+	}
+
+	/**
+	 * Copies part of a row while holding its stripe lock.  The caller must
+	 * hold the global read lock.
+	 */
+	private void readRow(int column, int row, int len, int[] result, int off) {
+		final Lock stripe = stripe(row);
+		stripe.lock();
+		try {
+			System.arraycopy(values, index(column, row), result, off, len);
+		}
+		finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Writes part of a row and records the damage while holding its stripe
+	 * lock.  The caller must hold the global read lock, and must call
+	 * {@link #deliverDamage()} after releasing it.
+	 */
+	private void writeRow(int column, int row, int[] values, int off, int len) {
+		final Lock stripe = stripe(row);
+		stripe.lock();
+		try {
+			System.arraycopy(values, off, this.values, index(column, row), len);
+			damage(row).add(column, row, len, 1);
+			// counted after the damage is recorded, for deliverDamage(), and
+			// before the stripe is unlocked, so a snapshot that reads the
+			// new content also reads the new version
+			versions.incrementAndGet();
+		}
+		finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Acquires the global read lock with the specified row inside the
+	 * extents, first extending the buffer if necessary.  The range is
+	 * checked under the same acquisition of the read lock in which the row
+	 * will be written, so a write only takes the read lock once unless it
+	 * must extend the buffer.
+	 *
+	 * @throws IndexOutOfBoundsException if the row is above the extents
+	 */
+	private void lockRow(int row) {
+		lock.readLock().lock();
+		while(row >= extents.y + extents.height) {
+			lock.readLock().unlock();
+			extend(0, row);
+			lock.readLock().lock();
+		}
+		if(row < extents.y) {
+			// another thread may have scrolled the row off since it was extended
+			lock.readLock().unlock();
+			throw new IndexOutOfBoundsException(String.format("row %d, extents.y %d", row, extents.y));
+		}
+	}
+
+	/**
+	 * Delivers the damage of every stripe to observers, unless another
+	 * thread is already delivering.  Must be called without holding any
+	 * lock.  If a writer records damage while another thread is delivering,
+	 * the version changes, so the delivering thread makes another pass.
+	 */
+	private void deliverDamage() {
+		final Rectangle region = new Rectangle();
+		while(!delivering.get() && delivering.compareAndSet(false, true)) {
+			final long seen = versions.get();
+			try {
+				for(int i = 0; i < stripes.length; ++i) {
+					if(!damage[i].isDamaged()) continue;
+					final boolean taken;
+					stripes[i].lock();
+					try {
+						taken = damage[i].take(region);
+					}
+					finally {
+						stripes[i].unlock();
+					}
+					if(!taken) continue;
+					synchronized(observers) {
+						super.fireContentChanged(region.x, region.y, region.width, region.height);
+					}
+				}
+			}
+			finally {
+				delivering.set(false);
+			}
+			if(versions.get() == seen) return;
+		}
+	}
+
+	@Override
+	public int getContent(int column, int row) {
+		checkColumns(column, 1);
+		lock.readLock().lock();
+		try {
+			checkRows(column, row, 1);
+			final Lock stripe = stripe(row);
+			stripe.lock();
+			try {
+				return values[index(column, row)];
+			}
+			finally {
+				stripe.unlock();
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void getContent(int column, int row, int len, int[] result) {
+		checkColumns(column, len);
+		lock.readLock().lock();
+		try {
+			checkRows(column, row, 1);
+			readRow(column, row, len, result, 0);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void getContent(int column, int row, int width, int height, int[][] result) {
+		checkColumns(column, width);
+		lock.readLock().lock();
+		try {
+			checkRows(column, row, height);
+			for(int r = 0; r < height; ++r) {
+				readRow(column, row + r, width, result[r], 0);
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Visits rows while holding the global read lock and the stripe lock of
+	 * each row.  The visitor should return quickly, since writers of the
+	 * same stripe wait for it.
+	 */
+	@Override
+	public void visitRows(int row, int height, RowVisitor visitor) {
+		lock.readLock().lock();
+		try {
+			checkRows(0, row, height);
+			for(int r = row; r < row + height; ++r) {
+				final Lock stripe = stripe(r);
+				stripe.lock();
+				try {
+					visitor.visitRow(r, values, index(0, r), columns);
+				}
+				finally {
+					stripe.unlock();
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public BufferSnapshot snapshot(int row, int height) {
+		lock.readLock().lock();
+		try {
+			final int first = Math.max(row, extents.y);
+			final int last = Math.min(row + height, extents.y + extents.height);
+			final int[][] result = new int[Math.max(0, last - first)][columns];
+			for(int r = 0; r < result.length; ++r) {
+				readRow(0, first + r, columns, result[r], 0);
+			}
+			// read after the rows, so it is at least the version of the content
+			return new BufferSnapshot(versions.get(), extents, first, result);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void setContent(int column, int row, int value) {
+		checkColumns(column, 1);
+		lockRow(row);
+		try {
+			final Lock stripe = stripe(row);
+			stripe.lock();
+			try {
+				values[index(column, row)] = value;
+				damage(row).add(column, row, 1, 1);
+				versions.incrementAndGet();
+			}
+			finally {
+				stripe.unlock();
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		deliverDamage();
+	}
+
+	@Override
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || off + len > values.length) throw new IllegalArgumentException();
+		if(column < 0) {
+			len += column;
+			off -= column;
+			column = 0;
+		}
+		if(column + len > columns) {
+			len -= column + len - columns;
+		}
+		if(len <= 0) {
+			extend(0, row);
+			return;
+		}
+		lockRow(row);
+		try {
+			writeRow(column, row, values, off, len);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		deliverDamage();
+	}
+
+	@Override
+	public void setContent(int column, int row, int[][] values, int width, int height) {
+		if(values.length < height) throw new IndexOutOfBoundsException();
+		for(int r = 0; r < height; ++r) {
+			if(values[r].length < width) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		checkColumns(column, width);
+		lock.readLock().lock();
+		try {
+			checkRows(column, row, height);
+			for(int r = 0; r < height; ++r) {
+				writeRow(column, row + r, values[r], 0, width);
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		deliverDamage();
+	}
+
+	/**
+	 * Appends rows while holding the global write lock, then notifies
+	 * observers of the extents while holding the read lock and of the
+	 * content after releasing it.
+	 */
+	@Override
+	public void appendRows(int[] values, int off, int rowCount) {
+		if(off < 0 || rowCount < 0 || off + rowCount * columns > values.length) throw new IllegalArgumentException();
+		if(rowCount == 0) return;
+		final int first;
+		final int height;
+		lock.writeLock().lock();
+		try {
+			final int row = extents.y + extents.height;
+			grow(row + rowCount - 1);
+			// skip any rows that have already scrolled off the top
+			final int skip = Math.max(0, extents.y - row);
+			first = row + skip;
+			height = rowCount - skip;
+			for(int r = 0; r < height; ++r) {
+				System.arraycopy(values, off + (skip + r) * columns, this.values, index(0, first + r), columns);
+			}
+			// downgrade so no other extents change can come between
+			lock.readLock().lock();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		try {
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		fireContentChanged(0, first, columns, height);
+	}
+
+	@Override
+	public void getExtents(Rectangle result) {
+		lock.readLock().lock();
+		try {
+			result.setBounds(extents);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(int column, int row) {
+		lock.readLock().lock();
+		try {
+			return extents.contains(column, row);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Scrolls the buffer extents, if necessary, to include the specified row.
+	 * Only takes the global write lock if the extents must change.  The
+	 * buffer can only be scrolled forward.
+	 */
+	@Override
+	public void extend(int column, int row) {
+		lock.readLock().lock();
+		try {
+			if(row < extents.y) throw new IndexOutOfBoundsException();
+			if(row < extents.y + extents.height) return;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		lock.writeLock().lock();
+		try {
+			// another thread may have extended the buffer in the meantime
+			if(!grow(row)) return;
+			lock.readLock().lock();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		try {
+			fireExtentsChanged(extents.x, extents.y, extents.width, extents.height);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Scrolls the extents to include the specified row and clears the new
+	 * rows.  The caller must hold the global write lock.
+	 *
+	 * @return true if the extents changed; otherwise false
+	 */
+	private boolean grow(int row) {
+		if(row < extents.y) throw new IndexOutOfBoundsException();
+		final int tail = extents.y + extents.height;
+		if(row < tail) return false;
+		final int newY = Math.max(extents.y, row + 1 - rows);
+		for(int r = Math.max(tail, newY); r <= row; ++r) {
+			final int slot = r % rows;
+			Arrays.fill(values, slot * columns, (slot + 1) * columns, VgaBufferElement.DEFAULT_VALUE);
+		}
+		extents.y = newY;
+		extents.height = row + 1 - newY;
+		return true;
+	}
+
+	@Override
+	public void addBufferObserver(BufferObserver observer) {
+		// content damage is delivered without the global lock
+		lock.writeLock().lock();
+		try {
+			synchronized(observers) {
+				super.addBufferObserver(observer);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean removeBufferObserver(BufferObserver observer) {
+		lock.writeLock().lock();
+		try {
+			synchronized(observers) {
+				return super.removeBufferObserver(observer);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void beginUpdate() {
+		lock.writeLock().lock();
+		super.beginUpdate();
+	}
+
+	@Override
+	public void endUpdate() {
+		try {
+			synchronized(observers) {
+				super.endUpdate();
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the current version of this buffer, which is counted separately
+	 * from the version of {@link AbstractBuffer} so that writers of
+	 * different stripes do not serialize on it.
+	 */
+	@Override
+	public long getVersion() {
+		return versions.get();
+	}
+
+	@Override
+	protected void fireContentChanged(int column, int row, int width, int height) {
+		versions.incrementAndGet();
+		synchronized(observers) {
+			super.fireContentChanged(column, row, width, height);
+		}
+	}
+
+	@Override
+	protected void fireExtentsChanged(int column, int row, int width, int height) {
+		versions.incrementAndGet();
+		synchronized(observers) {
+			super.fireExtentsChanged(column, row, width, height);
+		}
+	}
+}
@@ -43,6 +43,11 @@ public class SynchronizedBuffer implements Buffer {
 		return wrapped.getContent(column, row, width, height);
 	}
 
+	@Override
+	synchronized public void visitRows(int row, int height, RowVisitor visitor) {
+		wrapped.visitRows(row, height, visitor);
+	}
+
 	@Override
 	synchronized public void setContent(int column, int row, int value) {
 		wrapped.setContent(column, row, value);
@@ -58,6 +63,26 @@ public class SynchronizedBuffer implements Buffer {
 		wrapped.setContent(column, row, values, width, height);
 	}
 
+	@Override
+	synchronized public void appendRows(int[] values, int off, int rowCount) {
+		wrapped.appendRows(values, off, rowCount);
+	}
+
+	@Override
+	synchronized public BufferSnapshot snapshot(int row, int height) {
+		return wrapped.snapshot(row, height);
+	}
+
+	@Override
+	synchronized public void beginUpdate() {
+		wrapped.beginUpdate();
+	}
+
+	@Override
+	synchronized public void endUpdate() {
+		wrapped.endUpdate();
+	}
+
 	@Override
 	synchronized public void extend(int column, int row) {
 		wrapped.extend(column, row);
@@ -68,6 +93,11 @@ public class SynchronizedBuffer implements Buffer {
 		return wrapped.getExtents();
 	}
 
+	@Override
+	synchronized public void getExtents(Rectangle result) {
+		wrapped.getExtents(result);
+	}
+
 	@Override
 	synchronized public boolean contains(int column, int row) {
 		return wrapped.contains(column, row);
@@ -1,7 +1,6 @@
 package com.chalcodes.jtx;
 
 import java.awt.Dimension;
-import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.Rectangle;
 
@@ -49,9 +48,42 @@ public class SynchronizedDisplay extends Display {
 	}
 
 	@Override
-	protected void paintComponent(Graphics g) {
+	public void contentScrolled(Buffer source, int x, int y, int width, int height, int distance) {
 		synchronized(buffer) {
-			super.paintComponent(g);
+			super.contentScrolled(source, x, y, width, height, distance);
+		}
+	}
+
+	@Override
+	protected void getPaintExtents(Rectangle result) {
+		synchronized(buffer) {
+			super.getPaintExtents(result);
+		}
+	}
+
+	/**
+	 * Takes the snapshot while holding the buffer lock.  The lock is not
+	 * held while painting from the snapshot, so writers are only blocked
+	 * for as long as it takes to take the snapshot.
+	 */
+	@Override
+	protected BufferSnapshot getSnapshot(int row, int height) {
+		synchronized(buffer) {
+			return super.getSnapshot(row, height);
+		}
+	}
+
+	@Override
+	protected void jumpScrollFrame() {
+		synchronized(buffer) {
+			super.jumpScrollFrame();
+		}
+	}
+
+	@Override
+	public void setFlowControl(FlowControl flowControl) {
+		synchronized(buffer) {
+			super.setFlowControl(flowControl);
 		}
 	}
 
@@ -4,8 +4,8 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
-import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
 import java.awt.image.BufferedImage;
 import java.awt.image.VolatileImage;
 import java.io.IOException;
@@ -20,6 +20,9 @@ import javax.imageio.ImageIO;
  * and 128 pixels in height.  The size and position of the underline attribute
  * overlay is calculated automatically.
  * <p>
+ * Between {@link #beginFrame(Graphics)} and {@link #endFrame()}, the volatile
+ * image is validated only once instead of twice for every glyph.
+ * <p>
  * The glyph sheet contains 128 rows of 256 glyphs, rendered in all possible
  * combinations of foreground color, background color, and the "bright"
  * attribute.  The color order of the glyph sheet is black, red, green,
@@ -28,15 +31,41 @@ import javax.imageio.ImageIO;
  * rows of the glyph sheet.  This sequence is then repeated for glyphs with
  * the "bright" attribute set.  With the rows in this order, the row number
  * for any attribute value is simply the value of its seven rightmost bits.
+ * <p>
+ * Glyphs that have no foreground pixels in the glyph sheet, such as the
+ * space, are found when the font is created.  Runs of such glyphs with the
+ * same background color are drawn with a single <tt>fillRect</tt>.
  *
  * @author Kevin Krumwiede (kjkrum@gmail.com)
  */
-public class VgaSoftFont implements SoftFont {
+public class VgaSoftFont extends AbstractSoftFont {
 	protected final Dimension glyphSize;
 	protected final BufferedImage bufferedImage;
 	protected VolatileImage volatileImage;
+	/** The glyphs of the sheet that have no foreground pixels. */
+	private final BlankGlyphs blanks;
+	/** The top row and the height of the underline overlay. */
+	protected final int underlineTop;
+	protected final int underlineHeight;
+	/** The graphics context of the current frame, or null. */
+	private Graphics2D frameGraphics;
 	
+	/**
+	 * Creates a font whose volatile image is compatible with the default
+	 * screen device.
+	 * 
+	 * @throws HeadlessException if there is no screen device
+	 */
 	public VgaSoftFont(BufferedImage glyphSheet) {
+		this(glyphSheet, GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration());
+	}
+	
+	/**
+	 * Creates a font whose volatile image is initially compatible with the
+	 * specified graphics configuration.  The image is recreated if it is
+	 * drawn to an incompatible one.
+	 */
+	public VgaSoftFont(BufferedImage glyphSheet, GraphicsConfiguration gc) {
 		int width = glyphSheet.getWidth();
 		int height = glyphSheet.getHeight();
 		if(width == 0 || height == 0) {
@@ -47,11 +76,23 @@ public class VgaSoftFont implements SoftFont {
 		}
 		glyphSize = new Dimension(width / 256, height / 128);
 		bufferedImage = glyphSheet;
+		blanks = new BlankGlyphs(glyphSheet, glyphSize);
+		
+		// set the top of the underline
+		int uly1 = Math.round((float) glyphSize.height * 7 / 8);
+		if(uly1 == glyphSize.height) {
+			--uly1;
+		}
+		underlineTop = uly1;
+		
+		// set the thickness of the underline
+		int uly2 = Math.round((float) glyphSize.height * 1 / 16);
+		if(uly2 == 0) {
+			uly2 = 1;
+		}
+		underlineHeight = uly2;
 		
-		GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-	    GraphicsDevice gs = ge.getDefaultScreenDevice();
-	    GraphicsConfiguration gc = gs.getDefaultConfiguration();
-	    volatileImage = gc.createCompatibleVolatileImage(bufferedImage.getWidth(), bufferedImage.getHeight());
+		volatileImage = gc.createCompatibleVolatileImage(bufferedImage.getWidth(), bufferedImage.getHeight());
 		Graphics2D graphics = (Graphics2D) volatileImage.getGraphics();
 		graphics.drawImage(bufferedImage, 0, 0, null);
 		graphics.dispose();
@@ -72,77 +113,119 @@ public class VgaSoftFont implements SoftFont {
 
 	@Override
 	public void drawGlyph(int value, boolean blinkOn, Graphics graphics, int x, int y) {
-		Graphics2D g2d = (Graphics2D) graphics;
-		GraphicsConfiguration gc = g2d.getDeviceConfiguration();
+		final Graphics2D g2d = (Graphics2D) graphics;
+		// within a frame, the volatile image was validated by beginFrame
+		final GraphicsConfiguration gc = g2d == frameGraphics ? null : g2d.getDeviceConfiguration();
 		
 		int colorAttr = (value & 0x7F0000) >> 16;
 		if((value & VgaBufferElement.INVERTED) != 0 ^ (value & VgaBufferElement.SELECTED) != 0) {
 			colorAttr ^= 0x3F;
 		}
-
+		final int sy1 = colorAttr * glyphSize.height;
+		
 		// if value has blink attribute and blink is off, draw glyph 0
-		if(!blinkOn && (value & VgaBufferElement.BLINKING) != 0) {
-			int dx1 = x;
-			int dy1 = y;
-			int dx2 = dx1 + glyphSize.width;
-			int dy2 = dy1 + glyphSize.height;
-			int sx1 = 0;
-			int sy1 = colorAttr * glyphSize.height;
-			int sx2 = sx1 + glyphSize.width;
-			int sy2 = sy1 + glyphSize.height;
-			blit(g2d, gc, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2);
+		final boolean blinkedOff = !blinkOn && (value & VgaBufferElement.BLINKING) != 0;
+		int character = blinkedOff ? 0 : value & 0xFFFF;
+		if(character > 255) character = '?';
+		final int sx1 = character * glyphSize.width;
+		blit(g2d, gc, x, y, x + glyphSize.width, y + glyphSize.height, sx1, sy1, sx1 + glyphSize.width, sy1 + glyphSize.height);
+		
+		// if value has underline attribute, copy pixels from glyph 219
+		if(!blinkedOff && (value & VgaBufferElement.UNDERLINED) != 0) {
+			final int ulx1 = 219 * glyphSize.width;
+			final int uly1 = y + underlineTop;
+			blit(g2d, gc, x, uly1, x + glyphSize.width, uly1 + underlineHeight, ulx1, sy1, ulx1 + glyphSize.width, sy1 + 1);
 		}
-		else { // draw the requested glyph
-			int character = value & 0xFFFF;
-			if(character > 255) character = '?';
-			int dx1 = x;
-			int dy1 = y;
-			int dx2 = dx1 + glyphSize.width;
-			int dy2 = dy1 + glyphSize.height;
-			int sx1 = character * glyphSize.width;
-			int sy1 = colorAttr * glyphSize.height;
-			int sx2 = sx1 + glyphSize.width;
-			int sy2 = sy1 + glyphSize.height;
-			blit(g2d, gc, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2);
-			
-			// if value has underline attribute, copy pixels from glyph 219
-			if((value & VgaBufferElement.UNDERLINED) != 0) {
-				sx1 = 219 * glyphSize.width;
-				sx2 = sx1 + glyphSize.width;
-				sy2 = sy1 + 1;
-
-				// set the top of the underline
-				int uly1 = Math.round((float) glyphSize.height * 7 / 8);
-				if(uly1 == glyphSize.height) {
-					--uly1;
-				}
-				dy1 = dy1 + uly1;
-				
-				// set the thickness of the underline
-				int uly2 = Math.round((float) glyphSize.height * 1 / 16);
-				if(uly2 == 0) {
-					uly2 = 1;
-				}
-				dy2 = dy1 + uly2;
-				
-				blit(g2d, gc, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2);
+	}
+	
+	/**
+	 * Validates the volatile image once for the whole frame.  Glyphs drawn
+	 * into the same graphics context until {@link #endFrame()} are blitted
+	 * without validating it again.
+	 */
+	@Override
+	public void beginFrame(Graphics graphics) {
+		frameGraphics = (Graphics2D) graphics;
+		validate(frameGraphics.getDeviceConfiguration());
+	}
+	
+	/**
+	 * Returns false if the contents of the volatile image were lost while
+	 * drawing the frame.
+	 */
+	@Override
+	public boolean endFrame() {
+		frameGraphics = null;
+		return !volatileImage.contentsLost();
+	}
+	
+	/**
+	 * Fills runs of blank cells with the same background color with a single
+	 * <tt>fillRect</tt>, and draws the other cells with
+	 * {@link #drawGlyph(int, boolean, Graphics, int, int)}.
+	 */
+	@Override
+	public void drawRun(int[] values, int off, int len, boolean blinkOn, Graphics graphics, int x, int y) {
+		final int end = off + len;
+		int i = off;
+		while(i < end) {
+			final int bg = getBlankBackground(values[i], blinkOn);
+			if(bg < 0) {
+				drawGlyph(values[i], blinkOn, graphics, x + (i - off) * glyphSize.width, y);
+				++i;
+				continue;
 			}
+			int j = i + 1;
+			while(j < end && getBlankBackground(values[j], blinkOn) == bg) {
+				++j;
+			}
+			graphics.setColor(blanks.getColor(bg));
+			graphics.fillRect(x + (i - off) * glyphSize.width, y, (j - i) * glyphSize.width, glyphSize.height);
+			i = j;
 		}
 	}
 	
+	/**
+	 * Gets the background color of a cell that draws no foreground pixels.
+	 * 
+	 * @param value packed character and attributes
+	 * @param blinkOn whether characters with the blink attribute are on
+	 * @return the background color, or -1 if the cell is not blank
+	 */
+	protected int getBlankBackground(int value, boolean blinkOn) {
+		return blanks.getBackground(value, blinkOn);
+	}
+	
+	/**
+	 * Blits part of the volatile image.  If <tt>gc</tt> is null, the image
+	 * was already validated for the current frame and is drawn once.
+	 * Otherwise it is validated before and after drawing, and drawn again
+	 * until it was not lost in between.
+	 */
 	protected void blit(Graphics2D g2d, GraphicsConfiguration gc, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2) {
+		if(gc == null) {
+			g2d.drawImage(volatileImage, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+			return;
+		}
 		do {
-			switch(volatileImage.validate(gc)) {
-			case VolatileImage.IMAGE_INCOMPATIBLE:
-				volatileImage = gc.createCompatibleVolatileImage(bufferedImage.getWidth(), bufferedImage.getHeight());
-				//$FALL-THROUGH$
-			case VolatileImage.IMAGE_RESTORED:
-				Graphics2D volatileGraphics = (Graphics2D) volatileImage.getGraphics();
-				volatileGraphics.drawImage(bufferedImage, 0, 0, null);
-				volatileGraphics.dispose();
-			}
+			validate(gc);
 			g2d.drawImage(volatileImage, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
 			// make sure image wasn't invalidated during drawing
 		} while(volatileImage.validate(gc) != VolatileImage.IMAGE_OK);
 	}
+	
+	/**
+	 * Validates the volatile image, recreating or restoring it if necessary.
+	 */
+	protected void validate(GraphicsConfiguration gc) {
+		switch(volatileImage.validate(gc)) {
+		case VolatileImage.IMAGE_INCOMPATIBLE:
+			volatileImage = gc.createCompatibleVolatileImage(bufferedImage.getWidth(), bufferedImage.getHeight());
+			//$FALL-THROUGH$
+		case VolatileImage.IMAGE_RESTORED:
+			Graphics2D volatileGraphics = (Graphics2D) volatileImage.getGraphics();
+			volatileGraphics.drawImage(bufferedImage, 0, 0, null);
+			volatileGraphics.dispose();
+		}
+	}
 }
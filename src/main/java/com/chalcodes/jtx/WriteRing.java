@@ -0,0 +1,197 @@
+package com.chalcodes.jtx;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.swing.Timer;
+
+/**
+ * A lock-free queue of write operations from any number of producer threads
+ * to a buffer that is only accessed in the Swing thread.  The buffer can be
+ * an ordinary unsynchronized buffer like {@link ScrollbackBuffer}, displayed
+ * by an ordinary {@link Display}.
+ * <p>
+ * The queue is a ring of pre-allocated slots, each large enough for one row,
+ * so publishing an operation allocates nothing and copies the values only
+ * once.  A producer claims a slot by incrementing a shared sequence number,
+ * fills it, and publishes it by storing its sequence number in the slot.
+ * The Swing thread drains the published operations in order, typically once
+ * per frame from the timer started by {@link #start(int)}.  Consecutive
+ * appended rows that are adjacent in the ring are passed to
+ * {@link Buffer#appendRows(int[], int, int)} directly from the ring storage.
+ * <p>
+ * When the ring is full, producers yield until the Swing thread frees some
+ * slots.  Operations must therefore never be published in the Swing thread.
+ */
+public class WriteRing {
+	private static final int SET = 0;
+	private static final int APPEND = 1;
+	private static final int EXTEND = 2;
+
+	protected final Buffer buffer;
+	protected final int capacity;
+	protected final int columns;
+	private final int mask;
+	private final int[] ops;
+	private final int[] columnArgs;
+	private final int[] rowArgs;
+	private final int[] lengths;
+	/** Row values, one row per slot. */
+	private final int[] values;
+	/** The sequence number most recently published in each slot. */
+	private final AtomicLongArray published;
+	/** The next sequence number to be claimed by a producer. */
+	private final AtomicLong claimed = new AtomicLong();
+	/** The next sequence number to be applied by the Swing thread. */
+	private final AtomicLong consumed = new AtomicLong();
+	private Timer timer;
+
+	/**
+	 * Creates a new <tt>WriteRing</tt>.
+	 *
+	 * @param buffer the buffer to write; its width must not change
+	 * @param capacity the number of slots, which must be a power of two
+	 */
+	public WriteRing(Buffer buffer, int capacity) {
+		if(capacity < 1 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException();
+		this.buffer = buffer;
+		this.capacity = capacity;
+		columns = buffer.getExtents().width;
+		mask = capacity - 1;
+		ops = new int[capacity];
+		columnArgs = new int[capacity];
+		rowArgs = new int[capacity];
+		lengths = new int[capacity];
+		values = new int[capacity * columns];
+		published = new AtomicLongArray(capacity);
+		for(int i = 0; i < capacity; ++i) {
+			// as if published one lap ago
+			published.set(i, i - capacity);
+		}
+	}
+
+	/**
+	 * Claims the next slot, waiting for the Swing thread if the ring is full.
+	 */
+	private long claim() {
+		final long seq = claimed.getAndIncrement();
+		while(seq - capacity >= consumed.get()) {
+			Thread.yield();
+		}
+		return seq;
+	}
+
+	private void publish(long seq, int op, int column, int row, int[] values, int off, int len) {
+		final int slot = (int) seq & mask;
+		ops[slot] = op;
+		columnArgs[slot] = column;
+		rowArgs[slot] = row;
+		lengths[slot] = len;
+		if(len > 0) {
+			System.arraycopy(values, off, this.values, slot * columns, len);
+		}
+		published.lazySet(slot, seq);
+	}
+
+	/**
+	 * Queues a call to {@link Buffer#setContent(int, int, int[], int, int)}.
+	 *
+	 * @param len the number of values, which may not exceed the buffer width
+	 */
+	public void setContent(int column, int row, int[] values, int off, int len) {
+		if(off < 0 || len < 0 || len > columns || off + len > values.length) throw new IllegalArgumentException();
+		publish(claim(), SET, column, row, values, off, len);
+	}
+
+	/**
+	 * Queues the appending of one row.
+	 *
+	 * @param values the array containing the row
+	 * @param off the offset of the row in <tt>values</tt>; the row is as wide
+	 * as the buffer
+	 */
+	public void appendRow(int[] values, int off) {
+		if(off < 0 || off + columns > values.length) throw new IllegalArgumentException();
+		publish(claim(), APPEND, 0, 0, values, off, columns);
+	}
+
+	/**
+	 * Queues a call to {@link Buffer#extend(int, int)}.
+	 */
+	public void extend(int column, int row) {
+		publish(claim(), EXTEND, column, row, null, 0, 0);
+	}
+
+	/**
+	 * Applies the published operations to the buffer, up to one ring's worth.
+	 * Must be called in the Swing thread, or whatever single thread owns the
+	 * buffer.
+	 *
+	 * @return the number of operations applied
+	 */
+	public int drain() {
+		final long start = consumed.get();
+		long seq = start;
+		while(seq - start < capacity && published.get((int) seq & mask) == seq) {
+			final int slot = (int) seq & mask;
+			int count = 1;
+			switch(ops[slot]) {
+			case SET:
+				buffer.setContent(columnArgs[slot], rowArgs[slot], values, slot * columns, lengths[slot]);
+				break;
+			case APPEND:
+				// gather appends that are adjacent in the ring
+				while(slot + count < capacity && published.get(slot + count) == seq + count && ops[slot + count] == APPEND) {
+					++count;
+				}
+				buffer.appendRows(values, slot * columns, count);
+				break;
+			case EXTEND:
+				buffer.extend(columnArgs[slot], rowArgs[slot]);
+				break;
+			}
+			seq += count;
+			consumed.lazySet(seq);
+		}
+		return (int) (seq - start);
+	}
+
+	/**
+	 * Gets the number of operations that have been claimed but not applied.
+	 */
+	public int getBacklog() {
+		return (int) Math.max(0, claimed.get() - consumed.get());
+	}
+
+	/**
+	 * Starts a Swing timer that drains the ring once per frame.  Must be
+	 * called in the Swing thread.
+	 *
+	 * @param interval the frame interval in milliseconds
+	 */
+	public void start(int interval) {
+		if(timer == null) {
+			timer = new Timer(interval, new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					drain();
+				}
+			});
+			timer.setCoalesce(true);
+			timer.start();
+		}
+	}
+
+	/**
+	 * Stops the timer started by {@link #start(int)}.  Must be called in the
+	 * Swing thread.
+	 */
+	public void stop() {
+		if(timer != null) {
+			timer.stop();
+			timer = null;
+		}
+	}
+}
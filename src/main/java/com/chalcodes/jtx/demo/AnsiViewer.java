@@ -96,14 +96,14 @@ public class AnsiViewer extends BasicDemo {
 							}
 							bb.compact();
 							cb.flip();
-							int lexed = lexer.lex(cb, cb.position(), cb.remaining(), false);
+							int lexed = parser.lex(lexer, cb, cb.position(), cb.remaining(), false);
 							cb.position(lexed);
 							cb.compact();
 							bytes = fc.read(bb);
 						}
 						// lex anything remaining in the buffer
 						cb.flip();
-						lexer.lex(cb, cb.position(), cb.remaining(), true);
+						parser.lex(lexer, cb, cb.position(), cb.remaining(), true);
 						fc.close();
 					} catch (IOException ex) {
 						JOptionPane.showMessageDialog(AnsiViewer.this, "I/O error.", "Error", JOptionPane.ERROR_MESSAGE);
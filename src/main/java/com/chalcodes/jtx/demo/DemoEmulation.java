@@ -7,8 +7,10 @@ import java.util.Arrays;
 import java.util.List;
 
 import com.chalcodes.jtx.Buffer;
+import com.chalcodes.jtx.ReflowScrollbackBuffer;
 import com.chalcodes.jtx.VgaBufferElement;
 import com.chalcodes.jtx.demo.lexer.DemoEventListener;
+import com.chalcodes.jtx.demo.lexer.DemoLexer;
 
 /**
  * Parser for a simple demo emulation.  This parser processes events from the
@@ -36,17 +38,69 @@ public class DemoEmulation implements DemoEventListener {
 	protected int pageMark;
 	/** The cursor position at the last save cursor command. */
 	protected final Point cursorMark;
+	/** Reused to get the buffer extents without allocating. */
+	private final Rectangle extents = new Rectangle();
+	/** Reused to build the values written to a row. */
+	private int[] line;
+	/**
+	 * The value of {@link ReflowScrollbackBuffer#getRenumbered()} that the
+	 * row numbers above were last moved to match.
+	 */
+	private int renumbered;
 	
 	public DemoEmulation(Buffer buffer) {
 		this.buffer = buffer;
-		Rectangle extents = buffer.getExtents();		
+		buffer.getExtents(extents);
 		columns = extents.width;
+		line = new int[columns];
 		// position cursor to new row at bottom of buffer
 		cursor = new Point(0, extents.x + extents.height);
 		maxLine = cursor.y;
 		buffer.extend(0, maxLine);
 		pageMark = cursor.y;
 		cursorMark = new Point(cursor);
+		if(buffer instanceof ReflowScrollbackBuffer) {
+			renumbered = ((ReflowScrollbackBuffer) buffer).getRenumbered();
+		}
+	}
+	
+	/**
+	 * Moves the row numbers of the cursor and marks down by as many rows as
+	 * a {@link ReflowScrollbackBuffer} has moved its rows to make room for
+	 * reflowed history since the last call.
+	 */
+	protected void followRenumbering() {
+		if(buffer instanceof ReflowScrollbackBuffer) {
+			final int moved = ((ReflowScrollbackBuffer) buffer).getRenumbered() - renumbered;
+			if(moved != 0) {
+				cursor.y += moved;
+				cursorMark.y += moved;
+				maxLine += moved;
+				pageMark += moved;
+				renumbered += moved;
+			}
+		}
+	}
+	
+	/**
+	 * Lexes a chunk of input as a single buffer update transaction.  The
+	 * buffer lock is taken once for the whole chunk, and observers are
+	 * notified once when the chunk has been processed.
+	 * 
+	 * @param lexer a lexer that sends its events to this emulation
+	 * @return the value returned by the lexer
+	 */
+	public int lex(DemoLexer lexer, CharSequence seq, int off, int len, boolean endOfInput) {
+		synchronized(buffer) {
+			followRenumbering();
+			buffer.beginUpdate();
+			try {
+				return lexer.lex(seq, off, len, endOfInput);
+			}
+			finally {
+				buffer.endUpdate();
+			}
+		}
 	}
 	
 	@Override
@@ -130,9 +184,9 @@ public class DemoEmulation implements DemoEventListener {
 
 	@Override
 	public void clearLine(CharSequence seq, int off, int len) {
-		int[] values = new int[columns - cursor.x];
-		Arrays.fill(values, VgaBufferElement.DEFAULT_VALUE);
-		buffer.setContent(cursor.x, cursor.y, values, 0, values.length);		
+		final int count = columns - cursor.x;
+		Arrays.fill(line, 0, count, VgaBufferElement.DEFAULT_VALUE);
+		buffer.setContent(cursor.x, cursor.y, line, 0, count);
 	}
 
 	@Override
@@ -228,6 +282,10 @@ public class DemoEmulation implements DemoEventListener {
 		// advance the cursor
 		cursor.x += len;
 		if(cursor.x == columns) {
+			if(buffer instanceof ReflowScrollbackBuffer) {
+				// let the buffer rewrap this line if it is resized
+				((ReflowScrollbackBuffer) buffer).setWrapped(cursor.y, true);
+			}
 			cursor.x = 0;
 			++cursor.y;
 			if(cursor.y > maxLine) {
@@ -281,20 +339,22 @@ public class DemoEmulation implements DemoEventListener {
 			off -= column;
 			column = 0;
 		}
-		Rectangle extents = buffer.getExtents();
+		buffer.getExtents(extents);
 		if(column + len  > extents.width) {
 			len -= column + len - extents.width;
 		}
 		if(len <= 0) return;
 		
-		int[] values = new int[len];
-		Arrays.fill(values, 0, len, attributes & 0xFFFF0000);
+		if(line.length < len) {
+			line = new int[extents.width];
+		}
+		final int attr = attributes & 0xFFFF0000;
 		// set characters
 		for(int i = 0; i < len; ++i) {
-			values[i] += seq.charAt(off + i);
+			line[i] = attr + seq.charAt(off + i);
 		}
 //		System.out.println("writing " + len + " chars with attr " + attributes);
-		buffer.setContent(column, row, values, 0, len);
+		buffer.setContent(column, row, line, 0, len);
 	}
 	
 	/**
@@ -0,0 +1,100 @@
+package com.chalcodes.jtx.demo;
+
+import java.awt.Graphics;
+import java.awt.HeadlessException;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Random;
+
+import com.chalcodes.jtx.RasterSoftFont;
+import com.chalcodes.jtx.SoftFont;
+import com.chalcodes.jtx.VgaBufferElement;
+import com.chalcodes.jtx.VgaSoftFont;
+
+/**
+ * Compares the rendering speed of {@link VgaSoftFont}, which blits from a
+ * volatile image, with {@link RasterSoftFont}, which writes pixels directly.
+ * Each mode renders full 80x25 frames of random text into a
+ * <tt>TYPE_INT_RGB</tt> image, one row at a time, and prints the number of
+ * glyphs rendered per second.  The volatile image mode is skipped in headless
+ * environments.  The optional argument is the number of frames per mode,
+ * which are rendered once to warm up and once more to be timed.
+ */
+public class FontBenchmark {
+	private static final int COLUMNS = 80;
+	private static final int ROWS = 25;
+
+	public static void main(String[] args) throws IOException {
+		final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		final int[][] screen = randomScreen();
+		final RasterSoftFont raster = new RasterSoftFont();
+
+		// each mode runs once untimed so the JIT has compiled it
+		benchmarkRaster(raster, screen, frames);
+		report("RasterSoftFont, int[] raster", frames, benchmarkRaster(raster, screen, frames));
+		benchmarkGraphics(raster, screen, frames);
+		report("RasterSoftFont, Graphics", frames, benchmarkGraphics(raster, screen, frames));
+		try {
+			final VgaSoftFont vga = new VgaSoftFont();
+			benchmarkGraphics(vga, screen, frames);
+			report("VgaSoftFont, VolatileImage", frames, benchmarkGraphics(vga, screen, frames));
+		}
+		catch(HeadlessException e) {
+			System.out.println("VgaSoftFont, VolatileImage: not available in a headless environment");
+		}
+	}
+
+	private static int[][] randomScreen() {
+		final Random rand = new Random(0);
+		final int[][] screen = new int[ROWS][COLUMNS];
+		for(int r = 0; r < ROWS; ++r) {
+			for(int c = 0; c < COLUMNS; ++c) {
+				// about a third of a typical screen is blank
+				final char ch = rand.nextInt(3) == 0 ? ' ' : (char) (33 + rand.nextInt(94));
+				screen[r][c] = VgaBufferElement.setColor(ch, rand.nextInt(0x7F) << 16);
+			}
+		}
+		return screen;
+	}
+
+	private static long benchmarkRaster(RasterSoftFont font, int[][] screen, int frames) {
+		final int gw = font.getGlyphSize().width;
+		final int gh = font.getGlyphSize().height;
+		final BufferedImage image = new BufferedImage(COLUMNS * gw, ROWS * gh, BufferedImage.TYPE_INT_RGB);
+		final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		final long begin = System.nanoTime();
+		for(int f = 0; f < frames; ++f) {
+			for(int r = 0; r < ROWS; ++r) {
+				font.drawRun(screen[r], 0, COLUMNS, true, pixels, image.getWidth(), 0, r * gh);
+			}
+		}
+		return System.nanoTime() - begin;
+	}
+
+	private static long benchmarkGraphics(SoftFont font, int[][] screen, int frames) {
+		final int gw = font.getGlyphSize().width;
+		final int gh = font.getGlyphSize().height;
+		final BufferedImage image = new BufferedImage(COLUMNS * gw, ROWS * gh, BufferedImage.TYPE_INT_RGB);
+		final Graphics g = image.getGraphics();
+		try {
+			final long begin = System.nanoTime();
+			for(int f = 0; f < frames; ++f) {
+				font.beginFrame(g);
+				for(int r = 0; r < ROWS; ++r) {
+					font.drawRun(screen[r], 0, COLUMNS, true, g, 0, r * gh);
+				}
+				font.endFrame();
+			}
+			return System.nanoTime() - begin;
+		}
+		finally {
+			g.dispose();
+		}
+	}
+
+	private static void report(String mode, int frames, long nanos) {
+		final double seconds = nanos / 1e9;
+		System.out.printf("%s: %.0f frames/s, %.0f glyphs/s\n", mode, frames / seconds, frames * COLUMNS * ROWS / seconds);
+	}
+}
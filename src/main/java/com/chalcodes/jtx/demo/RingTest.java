@@ -0,0 +1,99 @@
+package com.chalcodes.jtx.demo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import com.chalcodes.jtx.VgaBufferElement;
+import com.chalcodes.jtx.WriteRing;
+
+/**
+ * A demo that spawns a thread to write to the Buffer through a
+ * {@link WriteRing}.  The Swing thread drains the ring once per frame, so
+ * unlike {@link SwingTest}, the writer needs no delay and allocates nothing
+ * per line.
+ */
+public class RingTest extends BasicDemo {
+	private static final long serialVersionUID = 1L;
+	private static final int BUFFER_LINES = 1000;
+	private static final int RING_SLOTS = 4096;
+	private static final int FRAME_INTERVAL = 15;
+
+	protected final WriteRing ring;
+
+	public RingTest() throws IOException {
+		super(BUFFER_LINES, false);
+		setTitle("JTX Write Ring Scrolling Test");
+		ring = new WriteRing(buffer, RING_SLOTS);
+		ring.start(FRAME_INTERVAL);
+	}
+
+	public static void main(String[] args) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final RingTest speedTest = new RingTest();
+					speedTest.setVisible(true);
+
+					JOptionPane.showMessageDialog(
+							speedTest,
+							"Click to begin.",
+							"Ring Test",
+							JOptionPane.PLAIN_MESSAGE
+						);
+
+					// read in the Swing thread, which owns the buffer
+					final int columns = speedTest.buffer.getExtents().width;
+					new Thread(new Runnable() {
+						@Override
+						public void run() {
+							// set up
+							final int lines = 1000000;
+							final Random rand = new Random();
+							final String msg = "All work and no play makes Jack a dull boy.";
+							final int[] row = new int[columns];
+							Arrays.fill(row, VgaBufferElement.DEFAULT_VALUE);
+
+							// main loop
+							final long begin = System.currentTimeMillis();
+							for(int i = 0; i < lines; ++i) {
+								// get a random color attribute
+								int attr = rand.nextInt(0x7F) << 16;
+								// ensure foreground and background aren't the same color
+								if(!VgaBufferElement.isBright(attr) && VgaBufferElement.getForegroundColor(attr) == VgaBufferElement.getBackgroundColor(attr)) {
+									// invert the foreground color if they are
+									attr ^= 0x70000;
+								}
+								for(int j = 0; j < msg.length(); ++j) {
+									row[j] = VgaBufferElement.setColor(msg.charAt(j), attr);
+								}
+								// copied into the ring; the row can be reused immediately
+								speedTest.ring.appendRow(row, 0);
+							}
+							final long end = System.currentTimeMillis();
+
+							// show report
+							SwingUtilities.invokeLater(new Runnable() {
+								@Override
+								public void run() {
+									JOptionPane.showMessageDialog(
+											speedTest,
+											"Wrote " + lines + " lines in " + (end - begin) + " ms.",
+											"Ring Test",
+											JOptionPane.INFORMATION_MESSAGE
+											);
+								}
+							});
+						}
+					}).start();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+}
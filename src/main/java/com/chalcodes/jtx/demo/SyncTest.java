@@ -1,23 +1,34 @@
 package com.chalcodes.jtx.demo;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
+import com.chalcodes.jtx.FlowControl;
 import com.chalcodes.jtx.VgaBufferElement;
 
 /**
- * A demo that spawns a thread to write to the Buffer.
+ * A demo that spawns a thread to write to the Buffer.  Lines are appended in
+ * batches, so the display is notified once per batch instead of once per
+ * line.  The writer waits whenever the display falls a buffer's worth of
+ * lines behind, so no line scrolls off before it has been rendered.
  */
 public class SyncTest extends BasicDemo {
 	private static final long serialVersionUID = 1L;
 	private static final int BUFFER_LINES = 1000;
+	private static final int BATCH_LINES = 100;
+	private static final long FLOW_TIMEOUT = 1000;
+	
+	protected final FlowControl flowControl;
 
 	public SyncTest() throws IOException {
 		super(BUFFER_LINES, true);
 		setTitle("JTX Synchronized Scrolling Test");
+		flowControl = new FlowControl(BUFFER_LINES - BATCH_LINES);
+		display.setFlowControl(flowControl);
 	}
 	
 	public static void main(String[] args) {
@@ -42,28 +53,35 @@ public class SyncTest extends BasicDemo {
 							final int lines = 1000000;
 							final Random rand = new Random();
 							final String msg = "All work and no play makes Jack a dull boy.";
-							final int[] content = new int[msg.length()];
-							for(int i = 0; i < content.length; ++i) {
-								content[i] = VgaBufferElement.setCharacter(0, msg.charAt(i));
-							}
+							final int columns = speedTest.buffer.getExtents().width;
+							final int[] batch = new int[BATCH_LINES * columns];
+							Arrays.fill(batch, VgaBufferElement.DEFAULT_VALUE);
 							
 							// main loop
 							final long begin = System.currentTimeMillis();
-							for(int i = 0; i < lines; ++i) {
-//								if(i == BUFFER_LINES) {
-//									System.out.println("buffer scrolling");
-//								}
-								// get a random color attribute
-								int attr = rand.nextInt(0x7F) << 16;
-								// ensure foreground and background aren't the same color
-								if(!VgaBufferElement.isBright(attr) && VgaBufferElement.getForegroundColor(attr) == VgaBufferElement.getBackgroundColor(attr)) {
-									// invert the foreground color if they are
-									attr ^= 0x70000;
+							for(int i = 0; i < lines; i += BATCH_LINES) {
+								for(int b = 0; b < BATCH_LINES; ++b) {
+									// get a random color attribute
+									int attr = rand.nextInt(0x7F) << 16;
+									// ensure foreground and background aren't the same color
+									if(!VgaBufferElement.isBright(attr) && VgaBufferElement.getForegroundColor(attr) == VgaBufferElement.getBackgroundColor(attr)) {
+										// invert the foreground color if they are
+										attr ^= 0x70000;
+									}
+									for(int j = 0; j < msg.length(); ++j) {
+										batch[b * columns + j] = VgaBufferElement.setColor(msg.charAt(j), attr);
+									}
 								}
-								for(int j = 0; j < content.length; ++j) {
-									content[j] = VgaBufferElement.setColor(content[j], attr);
+								// one extents event and one content event per batch
+								speedTest.buffer.appendRows(batch, 0, BATCH_LINES);
+								
+								// wait for the display to catch up, but not forever
+								// in case it is not showing
+								try {
+									speedTest.flowControl.await(FLOW_TIMEOUT);
+								} catch (InterruptedException e) {
+									return;
 								}
-								speedTest.buffer.setContent(0, i, content, 0, content.length);
 								
 								// uncomment to experiment with scrolling behavior
 //								try {
@@ -0,0 +1,47 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+
+/**
+ * Checks the contract of {@link Buffer#appendRows(int[], int, int)} and the
+ * growth of the extents it causes, shared by the tests of the buffers that
+ * implement it.
+ */
+final class AppendRowsContract {
+	private AppendRowsContract() { }
+
+	/**
+	 * Appends one row and then four rows to an empty buffer of two columns
+	 * and three rows, so the second append fills the buffer and then scrolls
+	 * it.  Observers must be notified of the extents change only once.
+	 *
+	 * @param buffer an empty buffer of two columns and three rows
+	 */
+	static void assertAppendAcrossCapacity(Buffer buffer) {
+		final int[] extentsEvents = new int[1];
+		buffer.addBufferObserver(new BufferObserver() {
+			@Override
+			public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+				++extentsEvents[0];
+			}
+
+			@Override
+			public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+			}
+
+			@Override
+			public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+			}
+		});
+		buffer.appendRows(new int[] { 0, 0 }, 0, 1);
+		extentsEvents[0] = 0;
+		// rows 1 through 4 fill the buffer and then scroll it
+		buffer.appendRows(new int[] { 1, 1, 2, 2, 3, 3, 4, 4 }, 0, 4);
+		assertEquals("extents events", 1, extentsEvents[0]);
+		assertEquals("final extents", new Rectangle(0, 2, 2, 3), buffer.getExtents());
+		assertArrayEquals("first row", new int[] { 2, 2 }, buffer.getContent(0, 2, 2));
+		assertArrayEquals("last row", new int[] { 4, 4 }, buffer.getContent(0, 4, 2));
+	}
+}
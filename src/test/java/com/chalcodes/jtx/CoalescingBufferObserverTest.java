@@ -0,0 +1,67 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+public class CoalescingBufferObserverTest {
+
+	@Test
+	public void testEventsMerged() throws Exception {
+		final List<Rectangle> extents = new ArrayList<Rectangle>();
+		final List<Rectangle> content = new ArrayList<Rectangle>();
+		// failures in the Swing thread would be lost, so they are recorded
+		final List<String> failures = new ArrayList<String>();
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(10, 100);
+		buffer.addBufferObserver(new CoalescingBufferObserver(new BufferObserver() {
+			@Override
+			public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+				if(!SwingUtilities.isEventDispatchThread()) failures.add("extents outside swing thread");
+				extents.add(new Rectangle(x, y, width, height));
+			}
+
+			@Override
+			public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+				if(!SwingUtilities.isEventDispatchThread()) failures.add("content outside swing thread");
+				content.add(new Rectangle(x, y, width, height));
+				delivered.countDown();
+			}
+
+			@Override
+			public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+				failures.add("scroll event");
+			}
+		}, 50));
+		// the frame timer cannot fire in the Swing thread until every write
+		// has been made, so however long they take, they make one frame
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				for(int row = 0; row < 200; ++row) {
+					buffer.setContent(row % 10, row, 'X');
+				}
+			}
+		});
+		assertTrue("delivered", delivered.await(5, TimeUnit.SECONDS));
+		// read the lists only after the Swing thread has finished with them
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+		assertEquals("failures", new ArrayList<String>(), failures);
+		assertEquals("extents events", 1, extents.size());
+		assertEquals("last extents", new Rectangle(0, 100, 10, 100), extents.get(0));
+		assertEquals("content events", 1, content.size());
+		assertEquals("damage", new Rectangle(0, 0, 10, 200), content.get(0));
+	}
+}
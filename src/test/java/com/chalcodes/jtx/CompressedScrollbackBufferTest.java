@@ -0,0 +1,74 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+
+import org.junit.Test;
+
+public class CompressedScrollbackBufferTest {
+
+	private static int[] line(int row, int cols) {
+		final String text = "line " + row + " \u2591";
+		final int[] values = new int[cols];
+		for(int i = 0; i < cols; ++i) {
+			char c = i < text.length() ? text.charAt(i) : ' ';
+			values[i] = VgaBufferElement.setColor(c, (row % 0x7F) << 16);
+		}
+		return values;
+	}
+
+	@Test
+	public void testReadColdRows() {
+		final int cols = 40;
+		final int rows = 1000;
+		final CompressedScrollbackBuffer buffer = new CompressedScrollbackBuffer(cols, rows, 10, 2);
+		for(int row = 0; row < 2500; ++row) {
+			buffer.setContent(0, row, line(row, cols), 0, cols);
+		}
+		assertEquals("final extents", new Rectangle(0, 1500, cols, rows), buffer.getExtents());
+		// read backwards and forwards so blocks are evicted from the cache
+		for(int row = 2499; row >= 1500; --row) {
+			assertArrayEquals("row " + row, line(row, cols), buffer.getContent(0, row, cols));
+		}
+		for(int row = 1500; row < 2500; ++row) {
+			assertArrayEquals("row " + row, line(row, cols), buffer.getContent(0, row, cols));
+		}
+	}
+
+	@Test
+	public void testWriteColdRow() {
+		final int cols = 8;
+		final CompressedScrollbackBuffer buffer = new CompressedScrollbackBuffer(cols, 500, 1);
+		buffer.extend(0, 499);
+		buffer.setContent(3, 5, 'X');
+		buffer.setContent(0, 7, new int[][] { { 'A', 'B' }, { 'C', 'D' } }, 2, 2);
+		assertEquals("single value", 'X', buffer.getContent(3, 5));
+		assertEquals("neighbor", 0, buffer.getContent(2, 5));
+		assertArrayEquals("rectangle", new int[] { 'C', 'D', 0 }, buffer.getContent(0, 8, 3));
+	}
+
+	@Test
+	public void testScrollClearsRows() {
+		final int cols = 4;
+		final int rows = 100;
+		final CompressedScrollbackBuffer buffer = new CompressedScrollbackBuffer(cols, rows, 5);
+		buffer.setContent(0, 0, 'A');
+		buffer.setContent(0, 1000, 'B');
+		assertEquals("final extents", new Rectangle(0, 901, cols, rows), buffer.getExtents());
+		assertEquals("tail", 'B', buffer.getContent(0, 1000));
+		assertEquals("cleared", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(0, 901));
+	}
+
+	@Test (expected=IndexOutOfBoundsException.class)
+	public void testReadBeforeHead() {
+		final CompressedScrollbackBuffer buffer = new CompressedScrollbackBuffer(1, 10, 1);
+		buffer.setContent(0, 10, 'A'); // this should cause scrolling
+		buffer.getContent(0, 0); // this should throw an exception
+	}
+
+	@Test
+	public void testAppendRowsAcrossCapacity() {
+		AppendRowsContract.assertAppendAcrossCapacity(new CompressedScrollbackBuffer(2, 3, 1));
+	}
+}
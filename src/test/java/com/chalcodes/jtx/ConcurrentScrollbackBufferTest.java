@@ -0,0 +1,64 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentScrollbackBufferTest {
+
+	@Test
+	public void testScrollback() {
+		final ConcurrentScrollbackBuffer buffer = new ConcurrentScrollbackBuffer(2, 5);
+		buffer.setContent(1, 3, 'A');
+		assertEquals("extents", new Rectangle(0, 0, 2, 4), buffer.getExtents());
+		assertEquals("written", 'A', buffer.getContent(1, 3));
+		assertEquals("blank", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(0, 3));
+		buffer.appendRows(new int[] { 1, 1, 2, 2, 3, 3 }, 0, 3);
+		assertEquals("scrolled", new Rectangle(0, 2, 2, 5), buffer.getExtents());
+		assertArrayEquals("appended", new int[] { 3, 3 }, buffer.getContent(0, 6, 2));
+		try {
+			buffer.getContent(0, 1);
+			fail("scrolled off");
+		}
+		catch(IndexOutOfBoundsException expected) {
+		}
+	}
+
+	@Test
+	public void testNoTornRows() throws InterruptedException {
+		final int cols = 80;
+		final ConcurrentScrollbackBuffer buffer = new ConcurrentScrollbackBuffer(cols, 50);
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		final Thread reader = new Thread() {
+			@Override
+			public void run() {
+				final int[] row = new int[cols];
+				while(!isInterrupted()) {
+					final BufferSnapshot snapshot = buffer.snapshot(0, Integer.MAX_VALUE);
+					for(int r = snapshot.getRow(); r < snapshot.getRow() + snapshot.getHeight(); ++r) {
+						snapshot.getContent(0, r, cols, row);
+						for(int value : row) {
+							// every row is written whole with its own row number
+							if(value != r && value != VgaBufferElement.DEFAULT_VALUE) {
+								failure.compareAndSet(null, "row " + r + ": " + Arrays.toString(row));
+							}
+						}
+					}
+				}
+			}
+		};
+		reader.start();
+		final int[] values = new int[cols];
+		for(int r = 0; r < 20000; ++r) {
+			Arrays.fill(values, r);
+			buffer.appendRows(values, 0, 1);
+		}
+		reader.interrupt();
+		reader.join();
+		assertNull(failure.get(), failure.get());
+	}
+}
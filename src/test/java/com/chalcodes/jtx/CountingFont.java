@@ -0,0 +1,19 @@
+package com.chalcodes.jtx;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+
+/** Counts glyphs drawn. */
+class CountingFont extends AbstractSoftFont {
+	int drawn;
+
+	@Override
+	public Dimension getGlyphSize() {
+		return new Dimension(2, 3);
+	}
+
+	@Override
+	public void drawGlyph(int value, boolean blinkOn, Graphics graphics, int x, int y) {
+		++drawn;
+	}
+}
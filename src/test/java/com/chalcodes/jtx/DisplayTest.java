@@ -0,0 +1,235 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+public class DisplayTest {
+	/** Counts glyphs drawn and loses its glyphs in the first frames. */
+	private static class LosingFont extends CountingFont {
+		int losses;
+
+		@Override
+		public boolean endFrame() {
+			return losses-- <= 0;
+		}
+	}
+
+	/**
+	 * Counts layouts and repaints, and samples the rate of new rows by a
+	 * clock the test sets.
+	 */
+	private static class ClockedDisplay extends Display {
+		long now;
+		int revalidates;
+		int repaints;
+
+		ClockedDisplay(Buffer buffer) {
+			super(buffer, new CountingFont(), 4, 3, false);
+		}
+
+		@Override
+		protected long nanoTime() {
+			return now;
+		}
+
+		@Override
+		public void revalidate() {
+			++revalidates;
+			super.revalidate();
+		}
+
+		@Override
+		public void repaint(long tm, int x, int y, int width, int height) {
+			++repaints;
+			super.repaint(tm, x, y, width, height);
+		}
+
+		/** Ignores the frame timer so the test drives every frame. */
+		@Override
+		protected void jumpScrollFrame() {
+			if(!SwingUtilities.isEventDispatchThread()) {
+				super.jumpScrollFrame();
+			}
+		}
+	}
+
+	private static void paint(Display display) {
+		final BufferedImage image = new BufferedImage(display.getWidth(), display.getHeight(), BufferedImage.TYPE_INT_RGB);
+		final Graphics g = image.getGraphics();
+		try {
+			display.paintComponent(g);
+		}
+		finally {
+			g.dispose();
+		}
+	}
+
+	@Test
+	public void testDirtyCellsOnly() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 10);
+		buffer.extend(0, 2);
+		final CountingFont font = new CountingFont();
+		final Display display = new Display(buffer, font, 4, 3, false);
+		display.setSize(8, 9);
+		paint(display);
+		assertEquals("first paint renders every cell", 12, font.drawn);
+		font.drawn = 0;
+		paint(display);
+		assertEquals("expose renders nothing", 0, font.drawn);
+		buffer.setContent(1, 1, new int[] { 'A', 'B' }, 0, 2);
+		paint(display);
+		assertEquals("changed cells only", 2, font.drawn);
+	}
+
+	@Test
+	public void testScrollRendersExposedRows() throws Exception {
+		final ScreenBuffer buffer = new ScreenBuffer(4, 3);
+		final CountingFont font = new CountingFont();
+		final Display display = new Display(buffer, font, 4, 3, false);
+		display.setSize(8, 9);
+		paint(display);
+		font.drawn = 0;
+		// the back buffer is only moved in the Swing thread
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				buffer.scroll(0, 3, 1);
+			}
+		});
+		paint(display);
+		assertEquals("exposed row only", 4, font.drawn);
+	}
+
+	@Test
+	public void testExtentsAdvanceRendersNewRows() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 3);
+		buffer.extend(0, 2);
+		final CountingFont font = new CountingFont();
+		final Display display = new Display(buffer, font, 4, 3, false);
+		display.setSize(8, 9);
+		paint(display);
+		font.drawn = 0;
+		buffer.extend(0, 4);
+		assertEquals("extents advanced", 2, display.extents.y);
+		paint(display);
+		assertEquals("new rows only", 8, font.drawn);
+	}
+
+	@Test
+	public void testLostFrameIsRetried() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 10);
+		buffer.extend(0, 2);
+		final LosingFont font = new LosingFont();
+		final Display display = new Display(buffer, font, 4, 3, false);
+		display.setSize(8, 9);
+		font.losses = 1;
+		paint(display);
+		assertEquals("frame drawn twice", 24, font.drawn);
+		font.drawn = 0;
+		font.losses = 2;
+		buffer.setContent(0, 0, 'A');
+		paint(display);
+		assertEquals("retried once", 2, font.drawn);
+		font.drawn = 0;
+		paint(display);
+		assertEquals("still dirty after second loss", 1, font.drawn);
+	}
+
+	/** Puts a display of ten rows in a viewport two rows high. */
+	private static JViewport viewport(Display display) {
+		final JViewport viewport = new JViewport();
+		viewport.setView(display);
+		display.setSize(8, 30);
+		viewport.setSize(8, 6);
+		return viewport;
+	}
+
+	@Test
+	public void testImageReusedWhileScrollingByPixels() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 10);
+		buffer.extend(0, 9);
+		final CountingFont font = new CountingFont();
+		final Display display = new Display(buffer, font, 4, 2, false);
+		final JViewport viewport = viewport(display);
+		paint(display);
+		final BufferedImage image = display.backBuffer.getImage();
+		assertEquals("room for a partial row", 9, image.getHeight());
+		for(int y = 1; y <= 6; ++y) {
+			viewport.setViewPosition(new Point(0, y));
+			paint(display);
+			assertSame("image at " + y, image, display.backBuffer.getImage());
+		}
+	}
+
+	@Test
+	public void testClipOutsideWindowRenderedDirectly() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 10);
+		buffer.extend(0, 9);
+		final CountingFont font = new CountingFont();
+		final Display display = new Display(buffer, font, 4, 2, false);
+		viewport(display);
+		paint(display);
+		assertEquals("every row", 40, font.drawn);
+		assertEquals("image sized to the viewport", 9, display.backBuffer.getImage().getHeight());
+		font.drawn = 0;
+		paint(display);
+		assertEquals("rows outside the window only", 32, font.drawn);
+	}
+
+	@Test
+	public void testJumpScrolling() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 1000);
+		final ClockedDisplay display = new ClockedDisplay(buffer);
+		display.setJumpScrollThreshold(100);
+		buffer.extend(0, 0);
+		assertFalse("smooth at first", display.isJumpScrolling());
+		display.revalidates = 0;
+		display.repaints = 0;
+		// 40 rows in 100ms is well above the threshold
+		display.now = 100000000L;
+		buffer.extend(0, 40);
+		assertTrue("entered", display.isJumpScrolling());
+		display.now = 150000000L;
+		buffer.extend(0, 50);
+		buffer.extend(0, 60);
+		assertEquals("no layout between frames", 0, display.revalidates);
+		assertEquals("no repaint between frames", 0, display.repaints);
+		display.jumpScrollFrame();
+		assertEquals("one layout per frame", 1, display.revalidates);
+		assertEquals("one repaint per frame", 1, display.repaints);
+		display.jumpScrollFrame();
+		assertEquals("unchanged frame not laid out", 1, display.revalidates);
+		assertEquals("unchanged frame not repainted", 1, display.repaints);
+		// the smoothed rate falls by half each idle second
+		display.now = 1150000000L;
+		display.jumpScrollFrame();
+		display.now = 2150000000L;
+		display.jumpScrollFrame();
+		assertTrue("above half the threshold", display.isJumpScrolling());
+		display.now = 3150000000L;
+		display.jumpScrollFrame();
+		assertFalse("left below half the threshold", display.isJumpScrolling());
+		buffer.extend(0, 61);
+		assertEquals("laid out at once", 2, display.revalidates);
+		assertEquals("repainted at once", 2, display.repaints);
+	}
+
+	@Test
+	public void testJumpScrollingDisabled() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 1000);
+		final ClockedDisplay display = new ClockedDisplay(buffer);
+		display.setJumpScrollThreshold(0);
+		buffer.extend(0, 0);
+		display.now = 100000000L;
+		buffer.extend(0, 900);
+		assertFalse("never jump scrolls", display.isJumpScrolling());
+	}
+}
@@ -0,0 +1,47 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FlowControlTest {
+
+	@Test
+	public void testBacklog() throws InterruptedException {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(2, 10);
+		final FlowControl flow = new FlowControl(5);
+		flow.extentsChanged(buffer, 0, 0, 2, 0);
+		buffer.addBufferObserver(flow);
+		buffer.extend(0, 3);
+		assertEquals("backlog", 4, flow.getBacklog());
+		assertTrue("below high water", flow.hasCapacity());
+		// scrolled rows count too
+		buffer.extend(0, 12);
+		assertEquals("backlog", 13, flow.getBacklog());
+		assertFalse("at high water", flow.await(10));
+		flow.rendered(flow.getWritten());
+		assertEquals("caught up", 0, flow.getBacklog());
+		assertTrue("capacity", flow.await(10));
+	}
+
+	@Test
+	public void testWriterWakes() throws InterruptedException {
+		final FlowControl flow = new FlowControl(1);
+		flow.contentScrolled(null, 0, 0, 1, 1, 1);
+		final Thread renderer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+				flow.rendered(flow.getWritten());
+			}
+		};
+		renderer.start();
+		assertTrue("woken", flow.await(5000));
+		renderer.join();
+	}
+}
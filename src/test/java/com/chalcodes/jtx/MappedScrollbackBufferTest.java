@@ -0,0 +1,75 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class MappedScrollbackBufferTest {
+
+	@Test
+	public void testReadWriteWithScroll() throws IOException {
+		final int cols = 3;
+		final int rows = 10;
+		final MappedScrollbackBuffer buffer = new MappedScrollbackBuffer(cols, rows);
+		try {
+			buffer.setContent(0, 1, 'A');
+			buffer.setContent(cols - 1, rows, 'B'); // this should cause scrolling
+
+			assertEquals("head", 'A', buffer.getContent(0, 1));
+			assertEquals("tail", 'B', buffer.getContent(cols - 1, rows));
+			assertEquals("cleared", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(0, rows));
+			assertEquals("final extents", new Rectangle(0, 1, cols, rows), buffer.getExtents());
+		}
+		finally {
+			buffer.close();
+		}
+	}
+
+	@Test
+	public void testRowIndexAfterScroll() throws IOException {
+		final int cols = 4;
+		final int rows = 13;
+		final MappedScrollbackBuffer buffer = new MappedScrollbackBuffer(cols, rows);
+		try {
+			for(int row = 0; row < 100; ++row) {
+				buffer.setContent(0, row, new int[] { row, row, row, row }, 0, cols);
+			}
+			assertArrayEquals("row indexing", new int[] { 90, 90, 90, 90 }, buffer.getContent(0, 90, cols));
+			int[][] rect = buffer.getContent(1, 95, 2, 5);
+			for(int r = 0; r < rect.length; ++r) {
+				assertArrayEquals("rectangle", new int[] { 95 + r, 95 + r }, rect[r]);
+			}
+		}
+		finally {
+			buffer.close();
+		}
+	}
+
+	@Test (expected=IndexOutOfBoundsException.class)
+	public void testReadBeforeHead() throws IOException {
+		final int cols = 1;
+		final int rows = 10;
+		final MappedScrollbackBuffer buffer = new MappedScrollbackBuffer(cols, rows);
+		try {
+			buffer.setContent(0, rows, 'A'); // this should cause scrolling
+			buffer.getContent(0, 0); // this should throw an exception
+		}
+		finally {
+			buffer.close();
+		}
+	}
+
+	@Test
+	public void testAppendRowsAcrossCapacity() throws IOException {
+		final MappedScrollbackBuffer buffer = new MappedScrollbackBuffer(2, 3);
+		try {
+			AppendRowsContract.assertAppendAcrossCapacity(buffer);
+		}
+		finally {
+			buffer.close();
+		}
+	}
+}
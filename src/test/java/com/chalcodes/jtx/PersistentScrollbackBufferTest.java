@@ -0,0 +1,90 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersistentScrollbackBufferTest {
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("jtx", ".store");
+		directory.delete();
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		final int cols = 6;
+		final int rows = 10;
+		PersistentScrollbackBuffer buffer = new PersistentScrollbackBuffer(rows, new SegmentStore(directory, cols));
+		for(int row = 0; row < 25; ++row) {
+			buffer.setContent(0, row, new int[] { 'r', row }, 0, 2);
+		}
+		buffer.close();
+
+		buffer = new PersistentScrollbackBuffer(rows, new SegmentStore(directory, cols));
+		try {
+			assertEquals("reopened extents", new Rectangle(0, 15, cols, rows), buffer.getExtents());
+			assertEquals("live row", 20, buffer.getContent(1, 20));
+			assertEquals("unwritten column", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(5, 20));
+			final int[] evicted = new int[cols];
+			assertTrue("evicted row stored", buffer.getStore().read(3, evicted, 0));
+			assertEquals("evicted row", 3, evicted[1]);
+
+			// keep writing after the restart
+			buffer.setContent(1, 25, 'x');
+			assertEquals("scrolled extents", new Rectangle(0, 16, cols, rows), buffer.getExtents());
+			assertEquals("row before restart", 24, buffer.getContent(1, 24));
+		}
+		finally {
+			buffer.close();
+		}
+	}
+
+	@Test
+	public void testVisitAfterReopen() throws IOException {
+		final int cols = 4;
+		final int rows = 5;
+		PersistentScrollbackBuffer buffer = new PersistentScrollbackBuffer(rows, new SegmentStore(directory, cols));
+		for(int row = 0; row < 5; ++row) {
+			buffer.setContent(0, row, 'a' + row);
+		}
+		buffer.close();
+
+		buffer = new PersistentScrollbackBuffer(rows, new SegmentStore(directory, cols));
+		try {
+			final int[] visited = new int[rows];
+			buffer.visitRows(0, rows, new RowVisitor() {
+				@Override
+				public void visitRow(int row, int[] values, int off, int len) {
+					visited[row] = values[off];
+				}
+			});
+			for(int row = 0; row < rows; ++row) {
+				assertEquals("visited row " + row, 'a' + row, visited[row]);
+			}
+			assertEquals("snapshot", 'c', buffer.snapshot(2, 1).getContent(0, 2));
+		}
+		finally {
+			buffer.close();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class RasterSoftFontTest {
+	private static final String SHEET = "/com/chalcodes/jtx/vga9x16.png";
+
+	private static BufferedImage sheet() throws IOException {
+		return ImageIO.read(RasterSoftFontTest.class.getResourceAsStream(SHEET));
+	}
+
+	/** Asserts that a cell of an image matches a glyph of the sheet. */
+	private static void assertGlyph(String message, BufferedImage sheet, int character, int colorAttr, BufferedImage image, int x) {
+		final int gw = sheet.getWidth() / 256;
+		final int gh = sheet.getHeight() / 128;
+		for(int dy = 0; dy < gh; ++dy) {
+			for(int dx = 0; dx < gw; ++dx) {
+				final int expected = sheet.getRGB(character * gw + dx, colorAttr * gh + dy) & 0xFFFFFF;
+				final int actual = image.getRGB(x + dx, dy) & 0xFFFFFF;
+				if(expected != actual) {
+					fail(String.format("%s: pixel %d, %d", message, dx, dy));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRasterMatchesSheet() throws IOException {
+		final BufferedImage sheet = sheet();
+		final RasterSoftFont font = new RasterSoftFont(sheet);
+		final int gw = font.getGlyphSize().width;
+		final int gh = font.getGlyphSize().height;
+		final int whiteOnBlue = VgaBufferElement.getValue('A', VgaColors.WHITE, VgaColors.BLUE, false, false, false, false);
+		final int brightBlinking = VgaBufferElement.getValue('x', VgaColors.YELLOW, VgaColors.BLACK, true, true, false, false);
+		final int inverted = VgaBufferElement.getValue('#', VgaColors.RED, VgaColors.GREEN, false, false, false, true);
+		final int[] values = { whiteOnBlue, brightBlinking, inverted, ' ' };
+		final BufferedImage image = new BufferedImage(values.length * gw, gh, BufferedImage.TYPE_INT_RGB);
+		final int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		font.drawRun(values, 0, values.length, true, raster, image.getWidth(), 0, 0);
+		assertGlyph("white on blue", sheet, 'A', (whiteOnBlue >> 16) & 0x7F, image, 0);
+		assertGlyph("bright", sheet, 'x', (brightBlinking >> 16) & 0x7F, image, gw);
+		assertGlyph("inverted", sheet, '#', ((inverted >> 16) & 0x7F) ^ 0x3F, image, 2 * gw);
+		assertGlyph("space", sheet, ' ', 0, image, 3 * gw);
+
+		font.drawRun(values, 1, 1, false, raster, image.getWidth(), gw, 0);
+		assertGlyph("blink off", sheet, 0, (brightBlinking >> 16) & 0x7F, image, gw);
+	}
+
+	@Test
+	public void testUnderline() throws IOException {
+		final BufferedImage sheet = sheet();
+		final RasterSoftFont font = new RasterSoftFont(sheet);
+		final int gh = font.getGlyphSize().height;
+		final int value = VgaBufferElement.getValue('_', VgaColors.GREEN, VgaColors.BLACK, false, false, true, false);
+		final BufferedImage image = new BufferedImage(font.getGlyphSize().width, gh, BufferedImage.TYPE_INT_RGB);
+		final int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		font.drawRun(new int[] { value }, 0, 1, true, raster, image.getWidth(), 0, 0);
+		final int green = sheet.getRGB(219 * font.getGlyphSize().width, VgaColors.GREEN * gh) & 0xFFFFFF;
+		assertEquals("underline row", green, image.getRGB(0, font.underlineTop) & 0xFFFFFF);
+		assertEquals("above underline", 0, image.getRGB(0, 0) & 0xFFFFFF);
+	}
+
+	@Test
+	public void testGraphicsMatchesRaster() throws IOException {
+		final RasterSoftFont font = new RasterSoftFont(sheet());
+		final int gw = font.getGlyphSize().width;
+		final int gh = font.getGlyphSize().height;
+		final int[] values = { 'J', 'T', 'X' };
+		final BufferedImage direct = new BufferedImage(3 * gw, gh, BufferedImage.TYPE_INT_RGB);
+		font.drawRun(values, 0, 3, true, ((DataBufferInt) direct.getRaster().getDataBuffer()).getData(), direct.getWidth(), 0, 0);
+		final BufferedImage drawn = new BufferedImage(3 * gw, gh, BufferedImage.TYPE_INT_RGB);
+		final Graphics g = drawn.getGraphics();
+		try {
+			font.drawRun(values, 0, 3, true, g, 0, 0);
+		}
+		finally {
+			g.dispose();
+		}
+		for(int y = 0; y < gh; ++y) {
+			for(int x = 0; x < 3 * gw; ++x) {
+				assertEquals("pixel", direct.getRGB(x, y), drawn.getRGB(x, y));
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+
+import org.junit.Test;
+
+public class ReflowScrollbackBufferTest {
+
+	private static void writeLine(ReflowScrollbackBuffer buffer, int row, String text) {
+		final int columns = buffer.getExtents().width;
+		for(int i = 0; i < text.length(); ++i) {
+			buffer.setContent(i % columns, row + i / columns, text.charAt(i));
+			if(i % columns == columns - 1 && i < text.length() - 1) {
+				buffer.setWrapped(row + i / columns, true);
+			}
+		}
+	}
+
+	private static String readRow(Buffer buffer, int row) {
+		final StringBuilder sb = new StringBuilder();
+		for(int value : buffer.getContent(0, row, buffer.getExtents().width)) {
+			if(value != VgaBufferElement.DEFAULT_VALUE) sb.append((char) value);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testWiden() {
+		final ReflowScrollbackBuffer buffer = new ReflowScrollbackBuffer(4, 100);
+		writeLine(buffer, 0, "abcdefghij"); // rows 0-2
+		writeLine(buffer, 3, "xy");
+		assertFalse("all reflowed", buffer.resize(10, 10));
+		assertEquals("extents", new Rectangle(0, 2, 10, 2), buffer.getExtents());
+		assertEquals("joined line", "abcdefghij", readRow(buffer, 2));
+		assertEquals("last line keeps its row", "xy", readRow(buffer, 3));
+	}
+
+	@Test
+	public void testIncrementalNarrow() {
+		final ReflowScrollbackBuffer buffer = new ReflowScrollbackBuffer(6, 100);
+		for(int row = 0; row < 20; ++row) {
+			writeLine(buffer, row, "line" + (char) ('a' + row));
+		}
+		assertTrue("history pending", buffer.resize(3, 4));
+		assertEquals("visible rows first", new Rectangle(0, 16, 3, 4), buffer.getExtents());
+		// a write while history is still pending
+		buffer.setContent(0, 20, 'z');
+		final Rectangle content = new Rectangle(0, 0, -1, -1);
+		buffer.addBufferObserver(new BufferObserver() {
+			@Override
+			public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+			}
+
+			@Override
+			public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+				content.add(new Rectangle(x, y, width, height));
+			}
+
+			@Override
+			public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+			}
+		});
+		while(buffer.reflow(5)) { }
+		// each line now takes two rows, so the rows were moved down to keep
+		// all twenty lines
+		final int moved = buffer.getRenumbered();
+		assertTrue("rows moved down", moved > 0);
+		assertEquals("final extents", new Rectangle(0, moved - 20, 3, 41), buffer.getExtents());
+		assertEquals("wrapped head", "lin", readRow(buffer, 18 + moved));
+		assertTrue("wrapped flag", buffer.isWrapped(18 + moved));
+		assertEquals("wrapped tail", "et", readRow(buffer, 19 + moved));
+		assertFalse("line end", buffer.isWrapped(19 + moved));
+		assertEquals("new write", "z", readRow(buffer, 20 + moved));
+		assertEquals("oldest line head", "lin", readRow(buffer, moved - 20));
+		assertEquals("oldest line", "ea", readRow(buffer, moved - 19));
+		assertEquals("moved rows repainted", buffer.getExtents(), content);
+	}
+}
@@ -0,0 +1,54 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+public class RowTileCacheTest {
+	@Test
+	public void testSharedTiles() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 10);
+		buffer.extend(0, 2);
+		final CountingFont font = new CountingFont();
+		final RowTileCache cache = new RowTileCache(buffer, font, 10);
+		final Display first = new Display(buffer, font, 4, 3, false);
+		final Display second = new Display(buffer, font, 4, 3, false);
+		cache.attach(first);
+		cache.attach(second);
+		final BufferSnapshot snapshot = buffer.snapshot(0, 3);
+		final BufferedImage tile = cache.getTile(snapshot, 1, true, null);
+		assertEquals("tile width", 8, tile.getWidth());
+		assertSame("second view shares the tile", tile, cache.getTile(snapshot, 1, true, null));
+		assertEquals("glyphs drawn once", 4, font.drawn);
+		buffer.setContent(0, 1, 'A');
+		assertEquals("invalidated", 0, cache.size());
+		buffer.extend(0, 20);
+		assertEquals("displays follow the cache", buffer.getExtents(), first.extents);
+		assertEquals("displays follow the cache", buffer.getExtents(), second.extents);
+	}
+
+	@Test
+	public void testCoalescedFeed() throws Exception {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 10);
+		final CountingFont font = new CountingFont();
+		final RowTileCache cache = new RowTileCache(buffer, font, 10, 0);
+		assertTrue("wrapped", cache.feed instanceof CoalescingBufferObserver);
+		final Display display = new Display(buffer, font, 4, 3, false);
+		cache.attach(display);
+		buffer.extend(0, 2);
+		buffer.setContent(0, 1, 'A');
+		buffer.extend(0, 4);
+		// let the frame timer fire, then wait for its event to be handled
+		Thread.sleep(100);
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+		assertEquals("display follows the merged events", buffer.getExtents(), display.extents);
+	}
+}
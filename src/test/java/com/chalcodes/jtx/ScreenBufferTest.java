@@ -0,0 +1,62 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+
+import org.junit.Test;
+
+public class ScreenBufferTest {
+
+	@Test
+	public void testScrollRegion() {
+		final ScreenBuffer buffer = new ScreenBuffer(2, 5);
+		for(int row = 0; row < 5; ++row) {
+			buffer.setContent(0, row, row);
+		}
+		final int[] event = new int[5];
+		buffer.addBufferObserver(new BufferObserver() {
+			@Override
+			public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+				fail("extents event");
+			}
+
+			@Override
+			public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+				fail("content event");
+			}
+
+			@Override
+			public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+				event[0] = x;
+				event[1] = y;
+				event[2] = width;
+				event[3] = height;
+				event[4] = distance;
+			}
+		});
+		buffer.scroll(1, 4, 1);
+		assertArrayEquals("scroll event", new int[] { 0, 1, 2, 3, 1 }, event);
+		assertEquals("above region", 0, buffer.getContent(0, 0));
+		assertEquals("moved up", 2, buffer.getContent(0, 1));
+		assertEquals("moved up", 3, buffer.getContent(0, 2));
+		assertEquals("exposed", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(0, 3));
+		assertEquals("below region", 4, buffer.getContent(0, 4));
+		buffer.scroll(0, 5, -2);
+		assertEquals("scroll distance", -2, event[4]);
+		assertEquals("exposed", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(0, 1));
+		assertEquals("moved down", 0, buffer.getContent(0, 2));
+		assertEquals("moved down", 2, buffer.getContent(0, 3));
+		assertEquals("moved down", 3, buffer.getContent(0, 4));
+	}
+
+	@Test
+	public void testAppendRows() {
+		final ScreenBuffer buffer = new ScreenBuffer(2, 3);
+		buffer.setContent(0, 2, 'A');
+		buffer.appendRows(new int[] { 'B', 'B', 'C', 'C' }, 0, 2);
+		assertEquals("extents", new Rectangle(0, 0, 2, 3), buffer.getExtents());
+		assertEquals("scrolled", 'A', buffer.getContent(0, 0));
+		assertArrayEquals("appended", new int[] { 'C', 'C' }, buffer.getContent(0, 2, 2));
+	}
+}
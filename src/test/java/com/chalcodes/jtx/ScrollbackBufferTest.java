@@ -3,6 +3,9 @@ package com.chalcodes.jtx;
 import static org.junit.Assert.*;
 
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -68,6 +71,169 @@ public class ScrollbackBufferTest {
 		
 		buffer.setContent(0, rows, 'A'); // this should cause scrolling
 		buffer.getContent(0, 0); // this should throw an exception
-	}	
+	}
+
+	@Test
+	public void testRectangleAfterScroll() {
+		final int cols = 3;
+		final int rows = 7;
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(cols, rows);
+		for(int row = 0; row < 20; ++row) {
+			buffer.setContent(0, row, new int[] { row, row, row }, 0, cols);
+		}
+		// rows 15 through 18 span the point where the ring wraps
+		int[][] rect = buffer.getContent(1, 15, 2, 4);
+		for(int r = 0; r < rect.length; ++r) {
+			assertArrayEquals("rectangle read", new int[] { 15 + r, 15 + r }, rect[r]);
+		}
+		buffer.setContent(0, 13, new int[][] { { 'A' }, { 'B' }, { 'C' } }, 1, 3);
+		assertEquals("rectangle write", 'C', buffer.getContent(0, 15));
+		assertEquals("rectangle write", 15, buffer.getContent(1, 15));
+	}
+
+	@Test
+	public void testRowsAcrossWrap() {
+		final int cols = 2;
+		final int rows = 5;
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(cols, rows);
+		buffer.extend(0, 7);
+		final int[] written = { 1, 2, 3, 4, 5, 6, 7, 8 };
+		buffer.setRows(4, 4, written, 0);
+		final int[] read = new int[written.length + 1];
+		buffer.getRows(4, 4, read, 1);
+		for(int i = 0; i < written.length; ++i) {
+			assertEquals("row copy", written[i], read[i + 1]);
+		}
+		assertEquals("single value", 8, buffer.getContent(1, 7));
+	}
+
+	@Test
+	public void testAppendRows() {
+		final int cols = 2;
+		final int rows = 5;
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(cols, rows);
+		final int[] events = new int[2];
+		buffer.addBufferObserver(new BufferObserver() {
+			@Override
+			public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+				++events[0];
+			}
+
+			@Override
+			public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+				++events[1];
+				assertEquals("content event", new Rectangle(0, 5, 2, 5), new Rectangle(x, y, width, height));
+			}
+
+			@Override
+			public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+				fail("scroll event");
+			}
+		});
+		buffer.extend(0, 2);
+		events[0] = 0;
+		// appends rows 3 through 9, so rows 3 and 4 scroll off before they are copied
+		buffer.appendRows(new int[] { 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7 }, 2, 7);
+		assertEquals("extents events", 1, events[0]);
+		assertEquals("content events", 1, events[1]);
+		assertEquals("final extents", new Rectangle(0, 5, cols, rows), buffer.getExtents());
+		assertEquals("first row", 3, buffer.getContent(1, 5));
+		assertEquals("last row", 7, buffer.getContent(1, 9));
+	}
+
+	@Test
+	public void testSnapshot() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(2, 5);
+		buffer.setContent(0, 3, 'A');
+		final BufferSnapshot snapshot = buffer.snapshot(2, 10);
+		buffer.setContent(0, 3, 'B');
+		assertEquals("rows clipped to extents", 2, snapshot.getHeight());
+		assertEquals("snapshot unchanged", 'A', snapshot.getContent(0, 3));
+		assertEquals("buffer changed", 'B', buffer.getContent(0, 3));
+		assertTrue("version advanced", buffer.snapshot(0, 1).getVersion() > snapshot.getVersion());
+	}
+
+	@Test
+	public void testChangedRowsSince() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(2, 5);
+		buffer.extend(0, 3);
+		final long version = buffer.getVersion();
+		assertArrayEquals("nothing changed", new int[0], buffer.changedRowsSince(version));
+		buffer.setContent(1, 2, 'A');
+		buffer.extend(0, 5);
+		assertArrayEquals("changed and added rows", new int[] { 2, 4, 5 }, buffer.changedRowsSince(version));
+		assertEquals("row generation", buffer.getVersion(), buffer.getGeneration(5));
+		assertArrayEquals("up to date", new int[0], buffer.changedRowsSince(buffer.getVersion()));
+	}
+
+	@Test
+	public void testUpdateTransaction() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 5);
+		final List<Rectangle> extents = new ArrayList<Rectangle>();
+		final List<Rectangle> content = new ArrayList<Rectangle>();
+		buffer.addBufferObserver(new BufferObserver() {
+			@Override
+			public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+				extents.add(new Rectangle(x, y, width, height));
+			}
+
+			@Override
+			public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+				content.add(new Rectangle(x, y, width, height));
+			}
 
+			@Override
+			public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+				fail("scroll event");
+			}
+		});
+		buffer.beginUpdate();
+		buffer.setContent(1, 1, 'A');
+		buffer.beginUpdate();
+		buffer.setContent(2, 6, 'B');
+		buffer.endUpdate();
+		assertTrue("held back", extents.isEmpty() && content.isEmpty());
+		buffer.endUpdate();
+		assertEquals("one extents event", Arrays.asList(new Rectangle(0, 2, 4, 5)), extents);
+		// row 1 scrolled off, so the damage is clipped to the final extents
+		assertEquals("one merged content event", Arrays.asList(new Rectangle(1, 2, 2, 5)), content);
+		buffer.setContent(0, 6, 'C');
+		assertEquals("delivered after the transaction", 2, content.size());
+	}
+
+	@Test (expected=IllegalStateException.class)
+	public void testUnbalancedEndUpdate() {
+		new ScrollbackBuffer(2, 5).endUpdate();
+	}
+
+	@Test
+	public void testVisitRows() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(2, 3);
+		buffer.appendRows(new int[] { 1, 1, 2, 2, 3, 3, 4, 4 }, 0, 4);
+		final Rectangle extents = new Rectangle();
+		buffer.getExtents(extents);
+		assertEquals("extents", new Rectangle(0, 1, 2, 3), extents);
+		final List<Integer> visited = new ArrayList<Integer>();
+		buffer.visitRows(2, 2, new RowVisitor() {
+			@Override
+			public void visitRow(int row, int[] values, int off, int len) {
+				assertEquals("len", 2, len);
+				assertEquals("first column", row + 1, values[off]);
+				assertEquals("last column", row + 1, values[off + len - 1]);
+				visited.add(row);
+			}
+		});
+		assertEquals("visited", Arrays.asList(2, 3), visited);
+	}
+
+	@Test (expected=IndexOutOfBoundsException.class)
+	public void testVisitRowsBeforeHead() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(2, 3);
+		buffer.extend(0, 4);
+		buffer.visitRows(1, 2, new RowVisitor() {
+			@Override
+			public void visitRow(int row, int[] values, int off, int len) {
+			}
+		});
+	}
 }
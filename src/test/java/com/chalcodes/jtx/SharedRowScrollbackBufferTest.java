@@ -0,0 +1,56 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SharedRowScrollbackBufferTest {
+
+	@Test
+	public void testDuplicateRowsShared() {
+		final int cols = 4;
+		final SharedRowScrollbackBuffer buffer = new SharedRowScrollbackBuffer(cols, 100);
+		final int[] warning = { 'W', 'A', 'R', 'N' };
+		for(int row = 0; row < 50; ++row) {
+			buffer.setContent(0, row, warning, 0, cols);
+		}
+		buffer.extend(0, 99);
+		// the blank row and the warning row
+		assertEquals("distinct rows", 2, buffer.getDistinctRowCount());
+		assertArrayEquals("shared content", warning, buffer.getContent(0, 25, cols));
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		final int cols = 2;
+		final SharedRowScrollbackBuffer buffer = new SharedRowScrollbackBuffer(cols, 5);
+		buffer.extend(0, 3);
+		buffer.setContent(1, 1, 'X');
+		assertEquals("written", 'X', buffer.getContent(1, 1));
+		assertEquals("other blank row", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(1, 2));
+		// scroll the written row off, releasing it
+		buffer.extend(0, 20);
+		assertEquals("distinct rows", 1, buffer.getDistinctRowCount());
+		assertEquals("scrolled", VgaBufferElement.DEFAULT_VALUE, buffer.getContent(1, 16));
+	}
+
+	@Test
+	public void testSnapshotCopyOnWrite() {
+		final SharedRowScrollbackBuffer buffer = new SharedRowScrollbackBuffer(2, 5);
+		buffer.setContent(0, 0, 'A');
+		final BufferSnapshot snapshot = buffer.snapshot(0, 1);
+		buffer.setContent(0, 0, 'B');
+		assertEquals("snapshot unchanged", 'A', snapshot.getContent(0, 0));
+		assertEquals("buffer changed", 'B', buffer.getContent(0, 0));
+		assertFalse("contains", snapshot.contains(0, 1));
+	}
+
+	@Test
+	public void testAppendRowsAcrossCapacity() {
+		final SharedRowScrollbackBuffer buffer = new SharedRowScrollbackBuffer(2, 3);
+		AppendRowsContract.assertAppendAcrossCapacity(buffer);
+		// the appended rows outside the live region are shared at once
+		buffer.appendRows(new int[] { 7, 7, 7, 7, 7, 7 }, 0, 3);
+		assertEquals("distinct rows", 3, buffer.getDistinctRowCount());
+	}
+}
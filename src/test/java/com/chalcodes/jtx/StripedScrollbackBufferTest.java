@@ -0,0 +1,117 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class StripedScrollbackBufferTest {
+
+	@Test
+	public void testScrollback() {
+		final StripedScrollbackBuffer buffer = new StripedScrollbackBuffer(2, 5, 2, 2);
+		buffer.setContent(1, 3, 'A');
+		assertEquals("extents", new Rectangle(0, 0, 2, 4), buffer.getExtents());
+		assertEquals("written", 'A', buffer.getContent(1, 3));
+		buffer.appendRows(new int[] { 1, 1, 2, 2, 3, 3 }, 0, 3);
+		assertEquals("scrolled", new Rectangle(0, 2, 2, 5), buffer.getExtents());
+		assertArrayEquals("appended", new int[] { 3, 3 }, buffer.getContent(0, 6, 2));
+		assertEquals("kept", 'A', buffer.getContent(1, 3));
+	}
+
+	@Test
+	public void testDisjointWriters() throws InterruptedException {
+		final int cols = 20;
+		final int writers = 4;
+		final int rowsEach = 8;
+		final StripedScrollbackBuffer buffer = new StripedScrollbackBuffer(cols, 100);
+		buffer.extend(0, writers * rowsEach - 1);
+		final Thread[] threads = new Thread[writers];
+		for(int w = 0; w < writers; ++w) {
+			final int id = w;
+			threads[w] = new Thread() {
+				@Override
+				public void run() {
+					final int[] row = new int[cols];
+					for(int i = 0; i < 10000; ++i) {
+						Arrays.fill(row, i);
+						buffer.setContent(0, id * rowsEach + i % rowsEach, row, 0, cols);
+					}
+				}
+			};
+			threads[w].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		for(int row = 0; row < writers * rowsEach; ++row) {
+			final int[] values = buffer.getContent(0, row, cols);
+			for(int value : values) {
+				assertEquals("row " + row, values[0], value);
+			}
+			assertEquals("last write", 10000 - rowsEach + row % rowsEach, values[0]);
+		}
+	}
+
+	@Test
+	public void testDisjointWritersWithObserver() throws InterruptedException {
+		final int cols = 20;
+		final int writers = 4;
+		final int rowsEach = 8;
+		final StripedScrollbackBuffer buffer = new StripedScrollbackBuffer(cols, 100);
+		buffer.extend(0, writers * rowsEach - 1);
+		final BitSet damaged = new BitSet();
+		final AtomicBoolean delivering = new AtomicBoolean();
+		final AtomicBoolean overlapped = new AtomicBoolean();
+		buffer.addBufferObserver(new BufferObserver() {
+			@Override
+			public void extentsChanged(Buffer buffer, int x, int y, int width, int height) {
+			}
+
+			@Override
+			public void contentChanged(Buffer buffer, int x, int y, int width, int height) {
+				if(!delivering.compareAndSet(false, true)) {
+					overlapped.set(true);
+				}
+				damaged.set(y, y + height);
+				delivering.set(false);
+			}
+
+			@Override
+			public void contentScrolled(Buffer buffer, int x, int y, int width, int height, int distance) {
+			}
+		});
+		final long before = buffer.getVersion();
+		final Thread[] threads = new Thread[writers];
+		for(int w = 0; w < writers; ++w) {
+			final int id = w;
+			threads[w] = new Thread() {
+				@Override
+				public void run() {
+					final int[] row = new int[cols];
+					for(int i = 0; i < 10000; ++i) {
+						Arrays.fill(row, i);
+						buffer.setContent(0, id * rowsEach + i % rowsEach, row, 0, cols);
+					}
+				}
+			};
+			threads[w].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse("events delivered at once", overlapped.get());
+		assertEquals("every row reported", writers * rowsEach, damaged.cardinality());
+		assertEquals("every write counted", before + writers * 10000, buffer.getVersion());
+
+		// damage left over from the writers has all been delivered
+		damaged.clear();
+		buffer.setContent(0, 5, 'x');
+		assertEquals("single row", 1, damaged.cardinality());
+		assertTrue("written row", damaged.get(5));
+	}
+}
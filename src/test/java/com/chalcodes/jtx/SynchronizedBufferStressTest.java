@@ -0,0 +1,247 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Runs concurrent writers, appenders and readers against a
+ * {@link SynchronizedBuffer} wrapping a {@link ScrollbackBuffer}.  Every
+ * write fills a whole row with one value, so a row containing more than one
+ * value was torn.  An observer checks that no event is lost and that the
+ * extents only ever move forward.  Throughput is printed for comparison with
+ * other buffers.
+ */
+public class SynchronizedBufferStressTest {
+	private static final int COLUMNS = 80;
+	private static final int ROWS = 50;
+	private static final int WRITERS = 3;
+	private static final int READERS = 2;
+	private static final int WRITES = 20000;
+	private static final int APPENDS = 2000;
+
+	/** Checks events as they are delivered under the buffer lock. */
+	private static class CheckingObserver implements BufferObserver {
+		final Buffer buffer;
+		final List<String> errors = new CopyOnWriteArrayList<String>();
+		long extentsEvents;
+		long contentEvents;
+		int lastY;
+		int lastTail;
+
+		CheckingObserver(Buffer buffer) {
+			this.buffer = buffer;
+			final Rectangle extents = buffer.getExtents();
+			lastY = extents.y;
+			lastTail = extents.y + extents.height;
+		}
+
+		@Override
+		public void extentsChanged(Buffer source, int x, int y, int width, int height) {
+			++extentsEvents;
+			if(y < lastY || y + height < lastTail) {
+				errors.add(String.format("extents moved back: y %d, tail %d after y %d, tail %d", y, y + height, lastY, lastTail));
+			}
+			if(!new Rectangle(x, y, width, height).equals(buffer.getExtents())) {
+				errors.add("stale extents event " + new Rectangle(x, y, width, height));
+			}
+			lastY = y;
+			lastTail = y + height;
+		}
+
+		@Override
+		public void contentChanged(Buffer source, int x, int y, int width, int height) {
+			++contentEvents;
+			if(y < lastY || y + height > lastTail) {
+				errors.add(String.format("content event for rows %d to %d outside extents", y, y + height));
+			}
+		}
+
+		@Override
+		public void contentScrolled(Buffer source, int x, int y, int width, int height, int distance) {
+			errors.add("scroll event");
+		}
+	}
+
+	/** Draws nothing. */
+	private static class NullFont extends AbstractSoftFont {
+		@Override
+		public Dimension getGlyphSize() {
+			return new Dimension(1, 1);
+		}
+
+		@Override
+		public void drawGlyph(int value, boolean blinkOn, Graphics graphics, int x, int y) {
+		}
+	}
+
+	private static String torn(int[] row) {
+		for(int value : row) {
+			if(value != row[0]) return Arrays.toString(row);
+		}
+		return null;
+	}
+
+	@Test
+	public void testWritersAppendersAndReaders() throws InterruptedException {
+		final SynchronizedBuffer buffer = new SynchronizedBuffer(new ScrollbackBuffer(COLUMNS, ROWS));
+		buffer.extend(0, ROWS - 1);
+		final CheckingObserver observer = new CheckingObserver(buffer);
+		buffer.addBufferObserver(observer);
+		final List<String> errors = new CopyOnWriteArrayList<String>();
+		final AtomicLong writes = new AtomicLong();
+		final AtomicLong reads = new AtomicLong();
+		final AtomicLong appended = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] writers = new Thread[WRITERS + 1];
+		for(int w = 0; w < WRITERS; ++w) {
+			final int id = w;
+			writers[w] = new Thread("writer " + w) {
+				@Override
+				public void run() {
+					final Random random = new Random(id);
+					final int[] row = new int[COLUMNS];
+					await(start);
+					for(int i = 0; i < WRITES; ++i) {
+						Arrays.fill(row, id << 24 | i);
+						synchronized(buffer) {
+							final Rectangle extents = buffer.getExtents();
+							buffer.setContent(0, extents.y + random.nextInt(extents.height), row, 0, COLUMNS);
+						}
+						writes.incrementAndGet();
+					}
+				}
+			};
+		}
+		writers[WRITERS] = new Thread("appender") {
+			@Override
+			public void run() {
+				final int[] rows = new int[COLUMNS * 3];
+				await(start);
+				for(int i = 0; i < APPENDS; ++i) {
+					Arrays.fill(rows, 0, COLUMNS, -i);
+					Arrays.fill(rows, COLUMNS, COLUMNS * 2, -i - 1);
+					Arrays.fill(rows, COLUMNS * 2, COLUMNS * 3, -i - 2);
+					buffer.appendRows(rows, 0, 1 + i % 3);
+					appended.addAndGet(1 + i % 3);
+					writes.incrementAndGet();
+				}
+			}
+		};
+		final Thread[] readers = new Thread[READERS];
+		final boolean[] done = new boolean[1];
+		for(int r = 0; r < READERS; ++r) {
+			final int id = r;
+			readers[r] = new Thread("reader " + r) {
+				@Override
+				public void run() {
+					final Random random = new Random(-id);
+					final int[] row = new int[COLUMNS];
+					await(start);
+					while(!isDone()) {
+						if(random.nextBoolean()) {
+							synchronized(buffer) {
+								final Rectangle extents = buffer.getExtents();
+								buffer.getContent(0, extents.y + random.nextInt(extents.height), COLUMNS, row);
+							}
+							check(row);
+						}
+						else {
+							final Rectangle extents = buffer.getExtents();
+							final BufferSnapshot snapshot = buffer.snapshot(extents.y, extents.height);
+							for(int r = snapshot.getRow(); r < snapshot.getRow() + snapshot.getHeight(); ++r) {
+								snapshot.getContent(0, r, COLUMNS, row);
+								check(row);
+							}
+						}
+						reads.incrementAndGet();
+					}
+				}
+
+				private boolean isDone() {
+					synchronized(done) {
+						return done[0];
+					}
+				}
+
+				private void check(int[] row) {
+					final String torn = torn(row);
+					if(torn != null) errors.add("torn row " + torn);
+				}
+			};
+		}
+		for(Thread thread : writers) thread.start();
+		for(Thread thread : readers) thread.start();
+		final long began = System.nanoTime();
+		start.countDown();
+		for(Thread thread : writers) thread.join();
+		final long elapsed = System.nanoTime() - began;
+		synchronized(done) {
+			done[0] = true;
+		}
+		for(Thread thread : readers) thread.join();
+
+		assertEquals("errors", Arrays.asList(), errors);
+		assertEquals("observer errors", Arrays.asList(), observer.errors);
+		assertEquals("content events", WRITERS * WRITES + APPENDS, observer.contentEvents);
+		assertEquals("extents events", APPENDS, observer.extentsEvents);
+		final Rectangle extents = buffer.getExtents();
+		assertEquals("rows appended", ROWS + appended.get(), extents.y + extents.height);
+		for(int row = extents.y; row < extents.y + extents.height; ++row) {
+			assertNull("torn row", torn(buffer.getContent(0, row, COLUMNS)));
+		}
+		System.out.println(String.format("%s: %d writes/s, %d reads/s",
+				getClass().getSimpleName(),
+				writes.get() * 1000000000L / elapsed,
+				reads.get() * 1000000000L / elapsed));
+	}
+
+	/**
+	 * Checks that a {@link SynchronizedDisplay} constructed under the buffer
+	 * lock while another thread is appending sees every extents change.
+	 */
+	@Test
+	public void testDisplayConstructedUnderLock() throws InterruptedException {
+		final SynchronizedBuffer buffer = new SynchronizedBuffer(new ScrollbackBuffer(COLUMNS, ROWS));
+		final CountDownLatch started = new CountDownLatch(1);
+		final Thread appender = new Thread("appender") {
+			@Override
+			public void run() {
+				final int[] row = new int[COLUMNS];
+				for(int i = 0; i < APPENDS; ++i) {
+					buffer.appendRows(row, 0, 1);
+					if(i == APPENDS / 10) started.countDown();
+				}
+			}
+		};
+		appender.start();
+		started.await();
+		final Display display;
+		synchronized(buffer) {
+			display = new SynchronizedDisplay(buffer, new NullFont(), COLUMNS, ROWS, false);
+		}
+		appender.join();
+		synchronized(buffer) {
+			assertEquals("display extents", buffer.getExtents(), display.extents);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.swing.DebugGraphics;
+
+import org.junit.Test;
+
+public class VgaSoftFontTest {
+	private static final String SHEET = "/com/chalcodes/jtx/vga9x16.png";
+
+	private static BufferedImage sheet() throws IOException {
+		return ImageIO.read(VgaSoftFontTest.class.getResourceAsStream(SHEET));
+	}
+
+	/** Counts the rectangles filled and the images drawn through it. */
+	private static class CountingGraphics extends DebugGraphics {
+		int fills;
+		int draws;
+
+		CountingGraphics(Graphics graphics) {
+			super(graphics);
+		}
+
+		@Override
+		public void fillRect(int x, int y, int width, int height) {
+			++fills;
+			super.fillRect(x, y, width, height);
+		}
+
+		/** The overload by which glyphs are blitted. */
+		@Override
+		public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+			++draws;
+			return super.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+		}
+	}
+
+	@Test
+	public void testBlankBackground() throws IOException {
+		final BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		final VgaSoftFont font;
+		try {
+			font = new VgaSoftFont(sheet(), g.getDeviceConfiguration());
+		}
+		finally {
+			g.dispose();
+		}
+		final int space = VgaBufferElement.getValue(' ', VgaColors.WHITE, VgaColors.BLUE, false, false, false, false);
+		final int letter = VgaBufferElement.getValue('A', VgaColors.WHITE, VgaColors.BLUE, false, false, false, false);
+		final int underlined = VgaBufferElement.getValue(' ', VgaColors.WHITE, VgaColors.BLUE, false, false, true, false);
+		final int inverted = VgaBufferElement.getValue(' ', VgaColors.WHITE, VgaColors.BLUE, false, false, false, true);
+		final int blinking = VgaBufferElement.getValue('A', VgaColors.WHITE, VgaColors.BLUE, false, true, false, false);
+		final int bright = VgaBufferElement.getValue(' ', VgaColors.YELLOW, VgaColors.RED, true, false, false, false);
+		assertEquals("space", VgaColors.BLUE, font.getBlankBackground(space, true));
+		assertEquals("null glyph", VgaColors.BLUE, font.getBlankBackground(letter & ~0xFFFF, true));
+		assertEquals("letter", -1, font.getBlankBackground(letter, true));
+		assertEquals("underlined", -1, font.getBlankBackground(underlined, true));
+		// inversion complements each color, as in the glyph sheet rows
+		assertEquals("inverted", VgaColors.YELLOW, font.getBlankBackground(inverted, true));
+		assertEquals("blink on", -1, font.getBlankBackground(blinking, true));
+		assertEquals("blink off", VgaColors.BLUE, font.getBlankBackground(blinking, false));
+		assertEquals("bright", VgaColors.RED, font.getBlankBackground(bright, true));
+		assertEquals("beyond the sheet", -1, font.getBlankBackground((space & ~0xFFFF) | 0x100, true));
+	}
+
+	@Test
+	public void testBlankRunFilledOnce() throws IOException {
+		final BufferedImage sheet = sheet();
+		final int space = VgaBufferElement.getValue(' ', VgaColors.WHITE, VgaColors.BLUE, false, false, false, false);
+		final int blinking = VgaBufferElement.getValue('A', VgaColors.WHITE, VgaColors.BLUE, false, true, false, false);
+		final int red = VgaBufferElement.getValue(' ', VgaColors.WHITE, VgaColors.RED, false, false, false, false);
+		final int[] values = { space, space & ~0xFFFF, blinking, space, red, red };
+		final BufferedImage image = new BufferedImage(values.length * 9, 16, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		try {
+			final VgaSoftFont font = new VgaSoftFont(sheet, g.getDeviceConfiguration());
+			final CountingGraphics counting = new CountingGraphics(g);
+			font.drawRun(values, 0, 4, false, counting, 0, 0);
+			assertEquals("one fill", 1, counting.fills);
+			assertEquals("no glyphs", 0, counting.draws);
+			counting.fills = 0;
+			font.drawRun(values, 0, values.length, false, counting, 0, 0);
+			assertEquals("one fill per background", 2, counting.fills);
+			assertEquals("still no glyphs", 0, counting.draws);
+		}
+		finally {
+			g.dispose();
+		}
+		final int blue = sheet.getRGB(' ' * 9, (VgaColors.BLUE << 3) * 16);
+		final int redBg = sheet.getRGB(' ' * 9, (VgaColors.RED << 3) * 16);
+		assertEquals("blue run", blue, image.getRGB(3 * 9 + 8, 15));
+		assertEquals("red run", redBg, image.getRGB(4 * 9, 0));
+	}
+}
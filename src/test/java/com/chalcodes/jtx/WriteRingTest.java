@@ -0,0 +1,60 @@
+package com.chalcodes.jtx;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class WriteRingTest {
+
+	@Test
+	public void testProducersInOrder() throws InterruptedException {
+		final int cols = 4;
+		final int producers = 4;
+		final int rowsEach = 2000;
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(cols, producers * rowsEach);
+		final WriteRing ring = new WriteRing(buffer, 64);
+		final Thread[] threads = new Thread[producers];
+		for(int p = 0; p < producers; ++p) {
+			final int id = p;
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					final int[] row = new int[cols];
+					for(int i = 0; i < rowsEach; ++i) {
+						row[0] = id;
+						row[1] = i;
+						ring.appendRow(row, 0);
+					}
+				}
+			};
+			threads[p].start();
+		}
+		// this thread owns the buffer
+		int applied = 0;
+		while(applied < producers * rowsEach) {
+			applied += ring.drain();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals("backlog", 0, ring.getBacklog());
+		assertEquals("rows", producers * rowsEach, buffer.getExtents().height);
+		final int[] next = new int[producers];
+		for(int row = 0; row < producers * rowsEach; ++row) {
+			final int id = buffer.getContent(0, row);
+			assertEquals("producer order", next[id]++, buffer.getContent(1, row));
+		}
+	}
+
+	@Test
+	public void testSetContent() {
+		final ScrollbackBuffer buffer = new ScrollbackBuffer(4, 10);
+		final WriteRing ring = new WriteRing(buffer, 8);
+		ring.extend(0, 2);
+		ring.setContent(1, 2, new int[] { 'A', 'B' }, 0, 2);
+		assertEquals("not applied yet", 0, buffer.getExtents().height);
+		assertEquals("applied", 2, ring.drain());
+		assertEquals("extended", 3, buffer.getExtents().height);
+		assertArrayEquals("written", new int[] { 'A', 'B' }, buffer.getContent(1, 2, 2));
+	}
+}